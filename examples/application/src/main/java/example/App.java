@@ -11,11 +11,18 @@ import java.io.IOException;
 public class App {
 
     public static void main(String[] args) throws IOException, CommandRunFailure {
-        ToolBelt.with(
-                "example",
-                new App(),
-                new Sub()
-        ).runMain(args, true);
+        //answer shell completion from the bundled index, without building the tool
+        if (CompletionIndex.complete(args, CompletionIndex.DEFAULT_RESOURCE)) {
+            return;
+        }
+        ToolBelt.belt("example")
+                .defaultHelpCommands()
+                .ansiColorOutput(ToolBelt.isAnsiColorEnvEnabled())
+                .commandInput(new SimpleCommandInput())
+                .completion()
+                .add(new App(), new Sub())
+                .buckle()
+                .runMain(args, true);
     }
 
     @Command(description = "Start here, run: example begin")
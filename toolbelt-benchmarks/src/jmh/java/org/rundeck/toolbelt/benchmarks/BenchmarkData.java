@@ -0,0 +1,96 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import java.util.*;
+
+/**
+ * Generates nested input data for formatter benchmarks
+ */
+public class BenchmarkData {
+    /**
+     * A simple bean, for formatters which introspect properties
+     */
+    public static class Item {
+        private int id;
+        private String name;
+        private List<String> tags;
+        private Map<String, Object> attrs;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(final int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(final List<String> tags) {
+            this.tags = tags;
+        }
+
+        public Map<String, Object> getAttrs() {
+            return attrs;
+        }
+
+        public void setAttrs(final Map<String, Object> attrs) {
+            this.attrs = attrs;
+        }
+    }
+
+    /**
+     * @param size number of entries
+     *
+     * @return list of nested maps
+     */
+    public static List<Map<String, Object>> maps(int size) {
+        List<Map<String, Object>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", i);
+            item.put("name", "item-" + i);
+            item.put("tags", Arrays.asList("alpha", "beta", "gamma"));
+            item.put("attrs", attrs(i));
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * @param size number of entries
+     *
+     * @return list of beans
+     */
+    public static List<Item> items(int size) {
+        List<Item> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Item item = new Item();
+            item.setId(i);
+            item.setName("item-" + i);
+            item.setTags(Arrays.asList("alpha", "beta", "gamma"));
+            item.setAttrs(attrs(i));
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> attrs(final int i) {
+        Map<String, Object> attrs = new LinkedHashMap<>();
+        attrs.put("description", "multi-line\ndescription " + i);
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("x", i);
+        nested.put("enabled", i % 2 == 0);
+        attrs.put("nested", nested);
+        return attrs;
+    }
+}
@@ -0,0 +1,78 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rundeck.toolbelt.OutputFormatter;
+import org.rundeck.toolbelt.ToStringFormatter;
+import org.rundeck.toolbelt.format.json.jackson.JsonFormatter;
+import org.rundeck.toolbelt.format.yaml.snakeyaml.YamlFormatter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the JSON and YAML formatters for nested maps and beans. Run with the gc profiler (enabled in the
+ * build) to see allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataFormatterBenchmark {
+    @Param({"10", "100", "1000"})
+    int size;
+
+    List<Map<String, Object>> maps;
+    List<BenchmarkData.Item> items;
+    OutputFormatter json;
+    OutputFormatter yaml;
+    OutputFormatter yamlDirect;
+
+    @Setup
+    public void setup() {
+        maps = BenchmarkData.maps(size);
+        items = BenchmarkData.items(size);
+        json = new JsonFormatter().withBase(new ToStringFormatter());
+        yaml = new YamlFormatter().withBase(new ToStringFormatter());
+        yamlDirect = YamlFormatter.builder().build().withBase(new ToStringFormatter());
+    }
+
+    @Benchmark
+    public String jsonMaps() {
+        return json.format(maps);
+    }
+
+    @Benchmark
+    public String jsonBeans() {
+        return json.format(items);
+    }
+
+    /**
+     * Formats each element separately, as a command writing one output line per item does
+     */
+    @Benchmark
+    public int jsonEach() {
+        int length = 0;
+        for (BenchmarkData.Item item : items) {
+            length += json.format(item).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public String yamlMaps() {
+        return yaml.format(maps);
+    }
+
+    @Benchmark
+    public String yamlMapsDirect() {
+        return yamlDirect.format(maps);
+    }
+
+    @Benchmark
+    public String yamlBeans() {
+        return yaml.format(items);
+    }
+}
@@ -0,0 +1,102 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rundeck.toolbelt.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a command through nested command sets, for several nesting depths, as well as the unknown command and
+ * help paths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @SubCommand(path = {"a"})
+    public static class Depth1 {
+        @Command
+        public void leaf() {
+        }
+    }
+
+    @SubCommand(path = {"b", "b"})
+    public static class Depth2 {
+        @Command
+        public void leaf() {
+        }
+    }
+
+    @SubCommand(path = {"c", "c", "c", "c"})
+    public static class Depth4 {
+        @Command
+        public void leaf() {
+        }
+    }
+
+    @SubCommand(path = {"d", "d", "d", "d", "d", "d", "d", "d"})
+    public static class Depth8 {
+        @Command
+        public void leaf() {
+        }
+    }
+
+    @Param({"1", "2", "4", "8"})
+    int depth;
+
+    Tool tool;
+    String[] args;
+    String[] unknownArgs;
+    String[] helpArgs;
+
+    @Setup
+    public void setup() {
+        tool = ToolBelt.belt("bench")
+                       .defaultHelpCommands()
+                       .commandOutput(new SinkOutput())
+                       .commandInput(new SimpleCommandInput())
+                       .add(new Depth1(), new Depth2(), new Depth4(), new Depth8())
+                       .buckle();
+        List<String> path = new ArrayList<>();
+        String part = depth == 1 ? "a" : depth == 2 ? "b" : depth == 4 ? "c" : "d";
+        for (int i = 0; i < depth; i++) {
+            path.add(part);
+        }
+        List<String> run = new ArrayList<>(path);
+        run.add("leaf");
+        args = run.toArray(new String[0]);
+
+        List<String> unknown = new ArrayList<>(path);
+        unknown.add("leaves");
+        unknownArgs = unknown.toArray(new String[0]);
+
+        List<String> help = new ArrayList<>(path);
+        help.add("-h");
+        helpArgs = help.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public boolean dispatch() throws CommandRunFailure {
+        return tool.runMain(args, false);
+    }
+
+    @Benchmark
+    public boolean dispatchUnknown() throws CommandRunFailure {
+        return tool.runMain(unknownArgs, false);
+    }
+
+    @Benchmark
+    public boolean help() throws CommandRunFailure {
+        return tool.runMain(helpArgs, false);
+    }
+
+    @Benchmark
+    public boolean rootHelp() throws CommandRunFailure {
+        return tool.runMain(new String[]{"-h"}, false);
+    }
+}
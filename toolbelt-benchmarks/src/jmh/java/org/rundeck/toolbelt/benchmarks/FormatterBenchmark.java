@@ -0,0 +1,61 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rundeck.toolbelt.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text formatting of large nested inputs by the core formatters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatterBenchmark {
+    @Param({"10", "100", "1000"})
+    int size;
+
+    List<Map<String, Object>> data;
+    NiceFormatter nice;
+    PrefixFormatter prefix;
+    String template;
+    ANSIColorOutput.ColorString colorString;
+
+    @Setup
+    public void setup() {
+        data = BenchmarkData.maps(size);
+        nice = new NiceFormatter(new ToStringFormatter());
+        prefix = new PrefixFormatter("# ", new NiceFormatter(new ToStringFormatter()));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append("line ").append(i).append(": ${RED}red text$$ and ${BLUE}blue text$$\n");
+        }
+        template = sb.toString();
+        colorString = ANSIColorOutput.colorizeTemplate(template);
+    }
+
+    @Benchmark
+    public String nice() {
+        return nice.format(data);
+    }
+
+    @Benchmark
+    public String prefix() {
+        return prefix.format(data);
+    }
+
+    @Benchmark
+    public String toColors() {
+        return ANSIColorOutput.toColors(colorString);
+    }
+
+    @Benchmark
+    public ANSIColorOutput.ColorString colorizeTemplate() {
+        return ANSIColorOutput.colorizeTemplate(template);
+    }
+}
@@ -0,0 +1,68 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rundeck.toolbelt.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invocation of annotated command methods: parameter parsing, injection and reflective invocation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvokerBenchmark {
+    public static class Invoke {
+        @Command
+        public void noargs() {
+        }
+
+        @Command
+        public boolean typed(
+                @Arg("name") String name,
+                @Arg("count") int count,
+                @Arg("verbose") boolean verbose
+        )
+        {
+            return verbose && count > 0 && null != name;
+        }
+
+        @Command
+        public void output(CommandOutput output) {
+            output.output("result");
+        }
+    }
+
+    Tool tool;
+
+    @Setup
+    public void setup() {
+        tool = ToolBelt.belt("bench")
+                       .defaultHelpCommands()
+                       .commandOutput(new SinkOutput())
+                       .commandInput(new SimpleCommandInput())
+                       .add(new Invoke())
+                       .buckle();
+    }
+
+    @Benchmark
+    public boolean noargs() throws CommandRunFailure {
+        return tool.runMain(new String[]{"invoke", "noargs"}, false);
+    }
+
+    @Benchmark
+    public boolean typed() throws CommandRunFailure {
+        return tool.runMain(
+                new String[]{"invoke", "typed", "--name", "bob", "--count", "3", "--verbose"},
+                false
+        );
+    }
+
+    @Benchmark
+    public boolean output() throws CommandRunFailure {
+        return tool.runMain(new String[]{"invoke", "output"}, false);
+    }
+}
@@ -0,0 +1,51 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.rundeck.toolbelt.InputError;
+import org.rundeck.toolbelt.SimpleCommandInput;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of argv into method parameters by {@link SimpleCommandInput}, across argv sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleCommandInputBenchmark {
+    @Param({"2", "16", "128"})
+    int argc;
+
+    SimpleCommandInput input;
+    String[] args;
+    String lastParam;
+
+    @Setup
+    public void setup() {
+        input = new SimpleCommandInput();
+        args = new String[argc * 2];
+        for (int i = 0; i < argc; i++) {
+            args[i * 2] = "--opt" + i;
+            args[i * 2 + 1] = Integer.toString(i);
+        }
+        lastParam = "opt" + (argc - 1);
+    }
+
+    @Benchmark
+    public String parseString() throws InputError {
+        return input.parseArgs("bench", args, String.class, lastParam);
+    }
+
+    @Benchmark
+    public Integer parseInteger() throws InputError {
+        return input.parseArgs("bench", args, Integer.class, lastParam);
+    }
+
+    @Benchmark
+    public Boolean parseMissingBoolean() throws InputError {
+        return input.parseArgs("bench", args, Boolean.class, "absent");
+    }
+}
@@ -0,0 +1,36 @@
+package org.rundeck.toolbelt.benchmarks;
+
+import org.rundeck.toolbelt.CommandOutput;
+
+/**
+ * Output which retains only the last message, so that benchmarks measure the toolbelt rather than terminal I/O
+ */
+public class SinkOutput implements CommandOutput {
+    Object last;
+    long count;
+
+    private void accept(final Object output) {
+        last = output;
+        count++;
+    }
+
+    @Override
+    public void info(final Object output) {
+        accept(output);
+    }
+
+    @Override
+    public void output(final Object output) {
+        accept(output);
+    }
+
+    @Override
+    public void error(final Object error) {
+        accept(error);
+    }
+
+    @Override
+    public void warning(final Object error) {
+        accept(error);
+    }
+}
@@ -0,0 +1,126 @@
+package org.rundeck.toolbelt.benchmarks.startup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates the source of a synthetic toolbelt application, with a number of {@code @Command} methods spread across
+ * classes nested at {@code @SubCommand(path=...)} locations.
+ */
+public class CommandTreeGenerator {
+    static final String PACKAGE = "generated";
+    static final String MAIN_CLASS = PACKAGE + ".GeneratedMain";
+    private final int commands;
+    private final int methodsPerClass;
+    private final int fanout;
+
+    /**
+     * @param commands        total number of command methods
+     * @param methodsPerClass number of command methods per class
+     * @param fanout          number of distinct names at each level of the subcommand paths
+     */
+    public CommandTreeGenerator(final int commands, final int methodsPerClass, final int fanout) {
+        this.commands = commands;
+        this.methodsPerClass = methodsPerClass;
+        this.fanout = fanout;
+    }
+
+    int getClassCount() {
+        return (commands + methodsPerClass - 1) / methodsPerClass;
+    }
+
+    /**
+     * @param index class index
+     *
+     * @return subcommand path for the class
+     */
+    List<String> path(int index) {
+        return Arrays.asList("g" + (index % fanout), "s" + ((index / fanout) % fanout));
+    }
+
+    /**
+     * @return arguments which invoke the last generated command
+     */
+    public String[] lastCommandArgs() {
+        int cls = getClassCount() - 1;
+        int method = commands - 1 - cls * methodsPerClass;
+        List<String> args = new ArrayList<>(path(cls));
+        args.add(commandName(cls, method));
+        return args.toArray(new String[0]);
+    }
+
+    private String commandName(final int cls, final int method) {
+        return "c" + cls + "_" + method;
+    }
+
+    /**
+     * Write the generated sources
+     *
+     * @param dir source root
+     *
+     * @return list of source files written
+     */
+    public List<Path> write(Path dir) throws IOException {
+        Path pkg = dir.resolve(PACKAGE);
+        Files.createDirectories(pkg);
+        List<Path> files = new ArrayList<>();
+        StringBuilder instances = new StringBuilder();
+        for (int cls = 0; cls < getClassCount(); cls++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("package ").append(PACKAGE).append(";\n\n");
+            sb.append("import org.rundeck.toolbelt.*;\n\n");
+            List<String> path = path(cls);
+            sb.append("@SubCommand(path = {\"")
+              .append(String.join("\", \"", path))
+              .append("\"}, descriptions = {\"group ")
+              .append(path.get(0))
+              .append("\", \"set ")
+              .append(path.get(1))
+              .append("\"})\n");
+            sb.append("public class Commands").append(cls).append(" {\n");
+            for (int m = 0; m < methodsPerClass && cls * methodsPerClass + m < commands; m++) {
+                String name = commandName(cls, m);
+                sb.append("    @Command(description = \"Generated command ").append(name).append("\")\n");
+                sb.append("    public void ")
+                  .append(name)
+                  .append("(@Arg(\"name\") String name, @Arg(\"count\") Integer count, CommandOutput out) {\n");
+                sb.append("        out.output(\"").append(name).append("\");\n");
+                sb.append("    }\n\n");
+            }
+            sb.append("}\n");
+            Path file = pkg.resolve("Commands" + cls + ".java");
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+            if (cls > 0) {
+                instances.append(",\n");
+            }
+            instances.append("                        new Commands").append(cls).append("()");
+        }
+        String main = "package " + PACKAGE + ";\n\n"
+                      + "import org.rundeck.toolbelt.*;\n"
+                      + "import org.rundeck.toolbelt.benchmarks.startup.StartupProbe;\n\n"
+                      + "public class GeneratedMain {\n"
+                      + "    public static void main(String[] args) throws Exception {\n"
+                      + "        StartupProbe.start();\n"
+                      + "        ToolBelt.belt(\"generated\")\n"
+                      + "                .defaultHelpCommands()\n"
+                      + "                .commandInput(new SimpleCommandInput())\n"
+                      + "                .commandOutput(StartupProbe.output())\n"
+                      + "                .add(\n"
+                      + instances + "\n"
+                      + "                )\n"
+                      + "                .buckle()\n"
+                      + "                .runMain(args, true);\n"
+                      + "    }\n"
+                      + "}\n";
+        Path file = pkg.resolve("GeneratedMain.java");
+        Files.write(file, main.getBytes(StandardCharsets.UTF_8));
+        files.add(file);
+        return files;
+    }
+}
@@ -0,0 +1,228 @@
+package org.rundeck.toolbelt.benchmarks.startup;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures startup of generated toolbelt applications in fresh JVMs.
+ * <p>
+ * For each tree size a synthetic application is generated and compiled, then run repeatedly in a forked JVM,
+ * invoking one of its commands. Reported timings:
+ * </p>
+ * <ul>
+ * <li>main-to-first-output: from entry of main to the first output written by SystemOutput (in process)</li>
+ * <li>main-to-exit: from entry of main to JVM shutdown (in process)</li>
+ * <li>spawn-to-first-byte: from process launch until the first byte is read from its stdout</li>
+ * <li>spawn-to-exit: from process launch until the process exits</li>
+ * </ul>
+ * <p>
+ * Arguments: {@code [--sizes 10,100,1000] [--runs 20] [--warmup 3] [--jvm-args "-Xshare:auto ..."]
+ * [--work-dir dir]}
+ * </p>
+ */
+public class StartupBenchmark {
+    private static final Pattern PROBE = Pattern.compile(
+            StartupProbe.MARKER + " first-output-ns=(-?\\d+) exit-ns=(\\d+)"
+    );
+    static final int METHODS_PER_CLASS = 10;
+    static final int FANOUT = 10;
+
+    private List<Integer> sizes = Arrays.asList(10, 100, 1000);
+    private int runs = 20;
+    private int warmup = 3;
+    private List<String> jvmArgs = new ArrayList<>();
+    private Path workDir;
+
+    public static void main(String[] args) throws Exception {
+        StartupBenchmark benchmark = new StartupBenchmark();
+        benchmark.configure(args);
+        benchmark.run(System.out);
+    }
+
+    void configure(final String[] args) throws IOException {
+        for (int i = 0; i < args.length - 1; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = new ArrayList<>();
+                    for (String s : value.split(",")) {
+                        sizes.add(Integer.parseInt(s.trim()));
+                    }
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--jvm-args":
+                    jvmArgs = Arrays.asList(value.trim().split("\\s+"));
+                    break;
+                case "--work-dir":
+                    workDir = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (null == workDir) {
+            workDir = Files.createTempDirectory("toolbelt-startup");
+        }
+    }
+
+    void run(PrintStream out) throws IOException, InterruptedException {
+        out.println(String.format(
+                "%-8s %-22s %10s %10s %10s %10s %10s",
+                "commands", "metric (ms)", "min", "p50", "p90", "p99", "max"
+        ));
+        for (Integer size : sizes) {
+            CommandTreeGenerator generator = new CommandTreeGenerator(size, METHODS_PER_CLASS, FANOUT);
+            Path classes = compile(generator, workDir.resolve("tree-" + size));
+            Map<String, List<Long>> results = new LinkedHashMap<>();
+            for (int i = 0; i < warmup + runs; i++) {
+                Map<String, Long> sample = runOnce(classes, generator.lastCommandArgs());
+                if (i >= warmup) {
+                    sample.forEach((k, v) -> results.computeIfAbsent(k, x -> new ArrayList<>()).add(v));
+                }
+            }
+            results.forEach((metric, values) -> report(out, size, metric, values));
+        }
+    }
+
+    private void report(final PrintStream out, final int size, final String metric, final List<Long> values) {
+        Collections.sort(values);
+        out.println(String.format(
+                "%-8d %-22s %10.1f %10.1f %10.1f %10.1f %10.1f",
+                size,
+                metric,
+                millis(values.get(0)),
+                millis(percentile(values, 50)),
+                millis(percentile(values, 90)),
+                millis(percentile(values, 99)),
+                millis(values.get(values.size() - 1))
+        ));
+    }
+
+    /**
+     * @param sorted sorted values
+     * @param p      percentile
+     *
+     * @return nearest-rank percentile value
+     */
+    static long percentile(List<Long> sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private Path compile(final CommandTreeGenerator generator, final Path dir) throws IOException {
+        Path src = dir.resolve("src");
+        Path classes = dir.resolve("classes");
+        Files.createDirectories(classes);
+        List<Path> sources = generator.write(src);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (null == compiler) {
+            throw new IllegalStateException("A JDK is required to compile the generated command tree");
+        }
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<File> sourceFiles = new ArrayList<>();
+            sources.forEach(p -> sourceFiles.add(p.toFile()));
+            boolean success = compiler.getTask(
+                    null,
+                    files,
+                    null,
+                    Arrays.asList(
+                            "-classpath", System.getProperty("java.class.path"),
+                            "-d", classes.toString()
+                    ),
+                    null,
+                    files.getJavaFileObjectsFromFiles(sourceFiles)
+            ).call();
+            if (!success) {
+                throw new IllegalStateException("Failed to compile generated command tree in " + src);
+            }
+        }
+        return classes;
+    }
+
+    private Map<String, Long> runOnce(final Path classes, final String[] commandArgs)
+            throws IOException, InterruptedException
+    {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classes + File.pathSeparator + System.getProperty("java.class.path"));
+        command.add(CommandTreeGenerator.MAIN_CLASS);
+        command.addAll(Arrays.asList(commandArgs));
+
+        long spawn = System.nanoTime();
+        Process process = new ProcessBuilder(command).start();
+        process.getOutputStream().close();
+        long[] firstByte = {-1};
+        Thread stdout = new Thread(() -> {
+            try (InputStream in = process.getInputStream()) {
+                byte[] buf = new byte[8192];
+                int read;
+                while ((read = in.read(buf)) >= 0) {
+                    if (read > 0 && firstByte[0] < 0) {
+                        firstByte[0] = System.nanoTime() - spawn;
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        });
+        stdout.start();
+        String stderr;
+        try (InputStream err = process.getErrorStream()) {
+            stderr = readFully(err);
+        }
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Generated application did not exit: " + command);
+        }
+        long exit = System.nanoTime() - spawn;
+        stdout.join();
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException(String.format(
+                    "Generated application failed with exit code %d: %s%n%s",
+                    process.exitValue(),
+                    command,
+                    stderr
+            ));
+        }
+        Matcher matcher = PROBE.matcher(stderr);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No startup probe output from generated application: " + stderr);
+        }
+        Map<String, Long> sample = new LinkedHashMap<>();
+        sample.put("main-to-first-output", Long.parseLong(matcher.group(1)));
+        sample.put("main-to-exit", Long.parseLong(matcher.group(2)));
+        sample.put("spawn-to-first-byte", firstByte[0]);
+        sample.put("spawn-to-exit", exit);
+        return sample;
+    }
+
+    private static String readFully(final InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) >= 0) {
+            bytes.write(buf, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
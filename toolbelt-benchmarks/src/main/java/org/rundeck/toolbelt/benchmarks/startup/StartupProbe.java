@@ -0,0 +1,70 @@
+package org.rundeck.toolbelt.benchmarks.startup;
+
+import org.rundeck.toolbelt.SystemOutput;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timings within a generated application: from main entry to the first output written by {@link
+ * SystemOutput}, and to JVM shutdown. The timings are reported on stderr when the JVM exits.
+ */
+public class StartupProbe {
+    static final String MARKER = "STARTUP_PROBE";
+    private static final AtomicLong FIRST_OUTPUT = new AtomicLong(-1);
+    private static long start;
+
+    /**
+     * Mark main entry, and register the report for JVM shutdown
+     */
+    public static void start() {
+        start = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            long exit = System.nanoTime() - start;
+            System.err.println(String.format(
+                    "%s first-output-ns=%d exit-ns=%d",
+                    MARKER,
+                    FIRST_OUTPUT.get(),
+                    exit
+            ));
+        }));
+    }
+
+    /**
+     * @return system output which records the time of the first write
+     */
+    public static SystemOutput output() {
+        return new ProbeOutput();
+    }
+
+    private static void written() {
+        if (FIRST_OUTPUT.get() < 0) {
+            FIRST_OUTPUT.compareAndSet(-1, System.nanoTime() - start);
+        }
+    }
+
+    private static class ProbeOutput extends SystemOutput {
+        @Override
+        public void info(final Object output) {
+            super.info(output);
+            written();
+        }
+
+        @Override
+        public void output(final Object output) {
+            super.output(output);
+            written();
+        }
+
+        @Override
+        public void error(final Object error) {
+            super.error(error);
+            written();
+        }
+
+        @Override
+        public void warning(final Object error) {
+            super.warning(error);
+            written();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.rundeck.toolbelt.graalvm;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor which generates GraalVM native-image reachability metadata for toolbelt commands.
+ * <p>
+ * Classes annotated with {@code @Command} or {@code @SubCommand}, or declaring {@code @Command} methods, are registered
+ * for reflection, since the toolbelt discovers and invokes command methods reflectively. Interface parameters of command
+ * methods (e.g. JewelCLI option interfaces) are registered for reflection and as dynamic proxies. Commands returning a
+ * {@code Flow.Publisher} have the Flow interfaces registered, since the toolbelt subscribes with a dynamic proxy.
+ * </p>
+ * <p>
+ * The metadata is written to {@code META-INF/native-image/toolbelt/<name>/} in the class output, where it is found
+ * automatically by native-image. The name can be set with the processor option {@code -Atoolbelt.native.name=...}.
+ * </p>
+ */
+@SupportedAnnotationTypes({
+        NativeImageConfigProcessor.COMMAND,
+        NativeImageConfigProcessor.SUB_COMMAND
+})
+@SupportedOptions(NativeImageConfigProcessor.NAME_OPTION)
+public class NativeImageConfigProcessor extends AbstractProcessor {
+    static final String COMMAND = "org.rundeck.toolbelt.Command";
+    static final String SUB_COMMAND = "org.rundeck.toolbelt.SubCommand";
+    static final String NAME_OPTION = "toolbelt.native.name";
+    static final String DEFAULT_NAME = "commands";
+    private static final String TOOLBELT_PACKAGE = "org.rundeck.toolbelt";
+    private static final String FLOW = "java.util.concurrent.Flow";
+
+    private final Set<String> commandTypes = new TreeSet<>();
+    private final Set<String> optionTypes = new TreeSet<>();
+    private final Set<String> flowTypes = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.METHOD) {
+                    addCommandType((TypeElement) element.getEnclosingElement());
+                    addOptionTypes((ExecutableElement) element);
+                    addFlowTypes((ExecutableElement) element);
+                } else if (element instanceof TypeElement) {
+                    addCommandType((TypeElement) element);
+                }
+            }
+        }
+        if (roundEnv.processingOver() && !commandTypes.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private void addCommandType(final TypeElement type) {
+        commandTypes.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+    }
+
+    private void addOptionTypes(final ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+        for (VariableElement parameter : method.getParameters()) {
+            TypeMirror type = parameter.asType();
+            if (type.getKind() != TypeKind.DECLARED) {
+                continue;
+            }
+            TypeElement element = (TypeElement) ((DeclaredType) types.erasure(type)).asElement();
+            String name = processingEnv.getElementUtils().getBinaryName(element).toString();
+            if (element.getKind() == ElementKind.INTERFACE
+                && !name.startsWith("java.")
+                && !name.startsWith(TOOLBELT_PACKAGE + "."))
+            {
+                optionTypes.add(name);
+            }
+        }
+    }
+
+    private void addFlowTypes(final ExecutableElement method) {
+        TypeElement publisher = processingEnv.getElementUtils().getTypeElement(FLOW + ".Publisher");
+        Types types = processingEnv.getTypeUtils();
+        if (null != publisher
+            && method.getReturnType().getKind() == TypeKind.DECLARED
+            && types.isAssignable(types.erasure(method.getReturnType()), types.erasure(publisher.asType())))
+        {
+            flowTypes.add(FLOW + "$Publisher");
+            flowTypes.add(FLOW + "$Subscriber");
+            flowTypes.add(FLOW + "$Subscription");
+        }
+    }
+
+    private void write() {
+        String name = processingEnv.getOptions().getOrDefault(NAME_OPTION, DEFAULT_NAME);
+        String dir = "META-INF/native-image/toolbelt/" + name + "/";
+
+        Set<String> reflect = new TreeSet<>(commandTypes);
+        reflect.addAll(optionTypes);
+        reflect.addAll(flowTypes);
+        StringBuilder reflectConfig = new StringBuilder("[\n");
+        Iterator<String> iterator = reflect.iterator();
+        while (iterator.hasNext()) {
+            reflectConfig.append("  {\n")
+                         .append("    \"name\": ").append(quote(iterator.next())).append(",\n")
+                         .append("    \"allDeclaredConstructors\": true,\n")
+                         .append("    \"allPublicMethods\": true\n")
+                         .append("  }")
+                         .append(iterator.hasNext() ? ",\n" : "\n");
+        }
+        reflectConfig.append("]\n");
+
+        Set<String> proxy = new TreeSet<>(optionTypes);
+        if (flowTypes.contains(FLOW + "$Subscriber")) {
+            proxy.add(FLOW + "$Subscriber");
+        }
+        StringBuilder proxyConfig = new StringBuilder("[\n");
+        iterator = proxy.iterator();
+        while (iterator.hasNext()) {
+            proxyConfig.append("  {\n")
+                       .append("    \"interfaces\": [").append(quote(iterator.next())).append("]\n")
+                       .append("  }")
+                       .append(iterator.hasNext() ? ",\n" : "\n");
+        }
+        proxyConfig.append("]\n");
+
+        writeResource(dir + "reflect-config.json", reflectConfig.toString());
+        writeResource(dir + "proxy-config.json", proxyConfig.toString());
+    }
+
+    private void writeResource(final String path, final String content) {
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (Writer writer = resource.openWriter()) {
+                writer.write(content);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Unable to write native-image configuration " + path + ": " + e.getMessage()
+            );
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
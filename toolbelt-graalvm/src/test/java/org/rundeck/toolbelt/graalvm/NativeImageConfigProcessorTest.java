@@ -0,0 +1,178 @@
+package org.rundeck.toolbelt.graalvm;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NativeImageConfigProcessorTest {
+    private static final String COMMAND = "package org.rundeck.toolbelt;\n"
+                                          + "import java.lang.annotation.*;\n"
+                                          + "@Retention(RetentionPolicy.RUNTIME)\n"
+                                          + "@Target({ElementType.METHOD, ElementType.TYPE})\n"
+                                          + "public @interface Command {}\n";
+    private static final String SUB_COMMAND = "package org.rundeck.toolbelt;\n"
+                                              + "import java.lang.annotation.*;\n"
+                                              + "@Retention(RetentionPolicy.RUNTIME)\n"
+                                              + "@Target(ElementType.TYPE)\n"
+                                              + "public @interface SubCommand {}\n";
+    private static final String OPTIONS = "package sample;\n"
+                                          + "public interface Options {\n"
+                                          + "    String getName();\n"
+                                          + "}\n";
+    private static final String TOOL = "package sample;\n"
+                                       + "import org.rundeck.toolbelt.Command;\n"
+                                       + "public class Tool {\n"
+                                       + "    @Command public void run(Options options, Runnable runnable) {}\n"
+                                       + "    public static class Nested {\n"
+                                       + "        @Command public void nested() {}\n"
+                                       + "    }\n"
+                                       + "}\n";
+    private static final String SUB = "package sample;\n"
+                                      + "@org.rundeck.toolbelt.SubCommand\n"
+                                      + "public class Sub {}\n";
+    private static final String PUBLISHER = "package sample;\n"
+                                            + "import org.rundeck.toolbelt.Command;\n"
+                                            + "import java.util.concurrent.SubmissionPublisher;\n"
+                                            + "public class Publish {\n"
+                                            + "    @Command public SubmissionPublisher<String> publish() { return null; }\n"
+                                            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Source extends SimpleJavaFileObject {
+        private final String content;
+
+        Source(String name, String content) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    private File compile(List<String> options, Source... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        File out = folder.newFolder();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> args = new ArrayList<>(Arrays.asList("-proc:only", "-d", out.getPath()));
+        args.addAll(options);
+        JavaCompiler.CompilationTask task = compiler.getTask(
+                null,
+                null,
+                diagnostics,
+                args,
+                null,
+                Arrays.asList(sources)
+        );
+        task.setProcessors(Collections.singletonList(new NativeImageConfigProcessor()));
+        assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        return out;
+    }
+
+    private static String read(File dir, String name) throws IOException {
+        File file = new File(dir, "META-INF/native-image/toolbelt/" + name);
+        assertTrue("missing " + file, file.isFile());
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static Source[] sources(Source... sources) {
+        List<Source> all = new ArrayList<>(Arrays.asList(
+                new Source("org.rundeck.toolbelt.Command", COMMAND),
+                new Source("org.rundeck.toolbelt.SubCommand", SUB_COMMAND),
+                new Source("sample.Options", OPTIONS)
+        ));
+        all.addAll(Arrays.asList(sources));
+        return all.toArray(new Source[0]);
+    }
+
+    @Test
+    public void commandClassesAndOptionInterfaces() throws IOException {
+        File out = compile(
+                Collections.emptyList(),
+                sources(new Source("sample.Tool", TOOL), new Source("sample.Sub", SUB))
+        );
+        assertEquals(
+                "[\n"
+                + "  {\n"
+                + "    \"name\": \"sample.Options\",\n"
+                + "    \"allDeclaredConstructors\": true,\n"
+                + "    \"allPublicMethods\": true\n"
+                + "  },\n"
+                + "  {\n"
+                + "    \"name\": \"sample.Sub\",\n"
+                + "    \"allDeclaredConstructors\": true,\n"
+                + "    \"allPublicMethods\": true\n"
+                + "  },\n"
+                + "  {\n"
+                + "    \"name\": \"sample.Tool\",\n"
+                + "    \"allDeclaredConstructors\": true,\n"
+                + "    \"allPublicMethods\": true\n"
+                + "  },\n"
+                + "  {\n"
+                + "    \"name\": \"sample.Tool$Nested\",\n"
+                + "    \"allDeclaredConstructors\": true,\n"
+                + "    \"allPublicMethods\": true\n"
+                + "  }\n"
+                + "]\n",
+                read(out, "commands/reflect-config.json")
+        );
+        assertEquals(
+                "[\n"
+                + "  {\n"
+                + "    \"interfaces\": [\"sample.Options\"]\n"
+                + "  }\n"
+                + "]\n",
+                read(out, "commands/proxy-config.json")
+        );
+    }
+
+    @Test
+    public void nameOption() throws IOException {
+        File out = compile(
+                Collections.singletonList("-A" + NativeImageConfigProcessor.NAME_OPTION + "=example"),
+                sources(new Source("sample.Sub", SUB))
+        );
+        assertTrue(read(out, "example/reflect-config.json").contains("\"sample.Sub\""));
+        assertEquals("[\n]\n", read(out, "example/proxy-config.json"));
+    }
+
+    @Test
+    public void publisherRegistersFlowSubscriberProxy() throws IOException {
+        Assume.assumeTrue(
+                "Flow requires Java 9",
+                !System.getProperty("java.specification.version").startsWith("1.")
+        );
+        File out = compile(Collections.emptyList(), sources(new Source("sample.Publish", PUBLISHER)));
+        String reflect = read(out, "commands/reflect-config.json");
+        assertTrue(reflect, reflect.contains("\"java.util.concurrent.Flow$Publisher\""));
+        assertTrue(reflect, reflect.contains("\"java.util.concurrent.Flow$Subscriber\""));
+        assertTrue(reflect, reflect.contains("\"java.util.concurrent.Flow$Subscription\""));
+        assertEquals(
+                "[\n"
+                + "  {\n"
+                + "    \"interfaces\": [\"java.util.concurrent.Flow$Subscriber\"]\n"
+                + "  }\n"
+                + "]\n",
+                read(out, "commands/proxy-config.json")
+        );
+    }
+}
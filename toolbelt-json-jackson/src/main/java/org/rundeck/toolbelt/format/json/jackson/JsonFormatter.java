@@ -1,76 +1,288 @@
 package org.rundeck.toolbelt.format.json.jackson;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.rundeck.toolbelt.BaseDataOutputFormatter;
 import org.rundeck.toolbelt.Formatable;
 import org.rundeck.toolbelt.OutputFormatter;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * Created by greg on 11/17/16.
+ * <p>
+ * Formats data as JSON. Formatters share one default {@link ObjectMapper} unless another is given, and keep an {@link
+ * ObjectWriter} for each root type, so serializers are resolved once per type. Use {@link #builder()} to configure
+ * indentation, a custom mapper, or Jackson's Blackbird module.
  */
 public class JsonFormatter extends BaseDataOutputFormatter {
+    public static final String BLACKBIRD_MODULE = "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+
     ObjectMapper mapper;
+    final Writers writers;
+
+    private static final class Shared {
+        static final ObjectMapper MAPPER = new ObjectMapper();
+    }
+
+    private static final class SharedBlackbird {
+        static final ObjectMapper MAPPER = registerBlackbird(Shared.MAPPER.copy());
+    }
+
+    /**
+     * Writers by root type for one mapper and configuration
+     */
+    static final class Writers extends ClassValue<ObjectWriter> {
+        final ObjectWriter writer;
+
+        Writers(final ObjectWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        protected ObjectWriter computeValue(final Class<?> type) {
+            return writer.forType(type);
+        }
+
+        ObjectWriter writer(Object value) {
+            return null != value ? get(value.getClass()) : writer;
+        }
+    }
 
     public JsonFormatter() {
-        super();
-        this.mapper = new ObjectMapper();
+        this(null, null, Shared.MAPPER);
     }
 
     public JsonFormatter(final Function<Object, Optional<Formatable>> dataFormatter) {
-        super(dataFormatter);
-        this.mapper = new ObjectMapper();
+        this(null, dataFormatter, Shared.MAPPER);
     }
 
     public JsonFormatter(final OutputFormatter base) {
-        super(base);
-        this.mapper = new ObjectMapper();
+        this(base, null, Shared.MAPPER);
     }
 
     public JsonFormatter(
             final OutputFormatter base,
             final Function<Object, Optional<Formatable>> dataFormatter
     ) {
-        super(base, dataFormatter);
-        this.mapper = new ObjectMapper();
+        this(base, dataFormatter, Shared.MAPPER);
     }
 
     public JsonFormatter(final ObjectMapper mapper, final OutputFormatter base) {
-        super(base);
-        this.mapper = mapper;
+        this(base, null, mapper);
     }
 
     public JsonFormatter(
             final OutputFormatter base,
             final Function<Object, Optional<Formatable>> dataFormatter,
             final ObjectMapper mapper
+    ) {
+        this(base, dataFormatter, mapper, new Writers(mapper.writer()));
+    }
+
+    private JsonFormatter(
+            final OutputFormatter base,
+            final Function<Object, Optional<Formatable>> dataFormatter,
+            final ObjectMapper mapper,
+            final Writers writers
     ) {
         super(base, dataFormatter);
         this.mapper = mapper;
+        this.writers = writers;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private ObjectMapper mapper;
+        private boolean indent;
+        private boolean blackbird;
+        private OutputFormatter base;
+        private Function<Object, Optional<Formatable>> dataFormatter;
+
+        /**
+         * @param mapper mapper to use, default is a shared mapper
+         */
+        public Builder mapper(final ObjectMapper mapper) {
+            this.mapper = mapper;
+            return this;
+        }
+
+        /**
+         * @param indent true to indent output
+         */
+        public Builder indent(final boolean indent) {
+            this.indent = indent;
+            return this;
+        }
+
+        /**
+         * Register the Blackbird module, which generates serializer accessors instead of using reflection. The
+         * jackson-module-blackbird library must be on the classpath, otherwise this has no effect. The module is
+         * registered on a copy of a given mapper, which is not modified.
+         *
+         * @param blackbird true to register Blackbird
+         */
+        public Builder blackbird(final boolean blackbird) {
+            this.blackbird = blackbird;
+            return this;
+        }
+
+        /**
+         * @param base formatter for objects which are not data
+         */
+        public Builder base(final OutputFormatter base) {
+            this.base = base;
+            return this;
+        }
+
+        /**
+         * @param dataFormatter converts objects to data
+         */
+        public Builder dataFormatter(final Function<Object, Optional<Formatable>> dataFormatter) {
+            this.dataFormatter = dataFormatter;
+            return this;
+        }
+
+        public JsonFormatter build() {
+            ObjectMapper use = mapper;
+            if (null == use) {
+                use = blackbird ? SharedBlackbird.MAPPER : Shared.MAPPER;
+            } else if (blackbird) {
+                use = registerBlackbird(use.copy());
+            }
+            ObjectWriter writer = use.writer();
+            if (indent) {
+                writer = writer.with(SerializationFeature.INDENT_OUTPUT);
+            }
+            return new JsonFormatter(base, dataFormatter, use, new Writers(writer));
+        }
+    }
+
+    /**
+     * @return true if the Blackbird module is on the classpath
+     */
+    public static boolean isBlackbirdAvailable() {
+        try {
+            Class.forName(BLACKBIRD_MODULE, false, JsonFormatter.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static ObjectMapper registerBlackbird(ObjectMapper mapper) {
+        if (!isBlackbirdAvailable()) {
+            return mapper;
+        }
+        try {
+            Class<?> type = Class.forName(BLACKBIRD_MODULE, true, JsonFormatter.class.getClassLoader());
+            return mapper.registerModule((Module) type.getConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
     protected String formatObject(final Object value) {
         try {
-            return mapper.writeValueAsString(value);
+            return writers.writer(value).writeValueAsString(value);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Writes "[" then each item on its own line as it is produced, then "]". Items are indented if INDENT_OUTPUT is
+     * enabled by the mapper or {@link Builder#indent(boolean)}
+     */
+    @Override
+    protected void formatItems(final Iterator<?> items, final Consumer<String> out) {
+        boolean indent = isIndented();
+        out.accept("[");
+        String previous = null;
+        while (items.hasNext()) {
+            String next = chunk(formatObject(items.next()), indent);
+            if (null != previous) {
+                out.accept(previous + ",");
+            }
+            previous = next;
+        }
+        if (null != previous) {
+            out.accept(previous);
+        }
+        out.accept("]");
+    }
+
+    /**
+     * Writes "{" then each entry on its own line as it is produced, then "}". Entries are indented if INDENT_OUTPUT
+     * is enabled by the mapper or {@link Builder#indent(boolean)}
+     */
+    @Override
+    protected void formatEntries(final Iterator<? extends Map.Entry<?, ?>> entries, final Consumer<String> out) {
+        boolean indent = isIndented();
+        String separator = indent ? " : " : ":";
+        out.accept("{");
+        String previous = null;
+        while (entries.hasNext()) {
+            Map.Entry<?, ?> entry = entries.next();
+            String next = chunk(
+                    formatObject(String.valueOf(entry.getKey())) + separator + formatObject(entry.getValue()),
+                    indent
+            );
+            if (null != previous) {
+                out.accept(previous + ",");
+            }
+            previous = next;
+        }
+        if (null != previous) {
+            out.accept(previous);
+        }
+        out.accept("}");
+    }
+
+    /**
+     * @return class, serialization features and registered modules of the writer
+     */
+    @Override
+    public String getCacheKey() {
+        return getClass().getName()
+               + "[" + writers.writer.getConfig().getSerializationFeatures()
+               + "|" + mapper.getRegisteredModuleIds() + "]";
+    }
+
+    private boolean isIndented() {
+        return writers.writer.isEnabled(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    private static String chunk(String text, boolean indent) {
+        return indent ? "  " + text.replace("\n", "\n  ") : text;
+    }
+
     @Override
     protected boolean canFormatObject(final Object value) {
         return true;
     }
 
+    @Override
+    protected boolean canFormatType(final Class<?> type) {
+        return true;
+    }
+
     @Override
     protected OutputFormatter withBase(
             final Function<Object, Optional<Formatable>> dataFormatter, final OutputFormatter base
     ) {
 
-        return new JsonFormatter(base, dataFormatter, mapper);
+        return new JsonFormatter(base, dataFormatter, mapper, writers);
     }
 }
@@ -0,0 +1,19 @@
+package org.rundeck.toolbelt.format.json.jackson;
+
+import org.rundeck.toolbelt.OutputFormatter;
+import org.rundeck.toolbelt.OutputFormatterProvider;
+
+/**
+ * Provides the "json" output format
+ */
+public class JsonFormatterProvider implements OutputFormatterProvider {
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public OutputFormatter create() {
+        return new JsonFormatter();
+    }
+}
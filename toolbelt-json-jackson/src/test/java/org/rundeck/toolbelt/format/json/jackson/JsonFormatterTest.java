@@ -0,0 +1,233 @@
+package org.rundeck.toolbelt.format.json.jackson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.Test;
+import org.rundeck.toolbelt.Formatable;
+import org.rundeck.toolbelt.OutputFormatter;
+import org.rundeck.toolbelt.ToStringFormatter;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JsonFormatterTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class Job {
+        private final String name;
+        private final List<String> tags;
+
+        public Job(final String name, final List<String> tags) {
+            this.name = name;
+            this.tags = tags;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+
+    public static class ScheduledJob extends Job {
+        public ScheduledJob(final String name) {
+            super(name, Collections.emptyList());
+        }
+
+        public String getSchedule() {
+            return "daily";
+        }
+    }
+
+    private static Formatable items(List<?> items) {
+        return new Formatable() {
+            @Override
+            public Iterator<?> asIterator() {
+                return items.iterator();
+            }
+        };
+    }
+
+    private static Formatable entries(Map<?, ?> map) {
+        return new Formatable() {
+            @Override
+            public Iterator<? extends Map.Entry<?, ?>> asEntryIterator() {
+                return map.entrySet().iterator();
+            }
+        };
+    }
+
+    private static List<String> chunks(JsonFormatter formatter, Object o) {
+        List<String> chunks = new ArrayList<>();
+        formatter.format(o, chunk -> chunks.add(chunk.replace("\r\n", "\n")));
+        return chunks;
+    }
+
+    private static Map<String, Object> map(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    @Test
+    public void formatsLikeTheMapper() throws IOException {
+        JsonFormatter formatter = new JsonFormatter();
+        List<Object> values = Arrays.asList(
+                new Job("a", Arrays.asList("x", "y")),
+                new ScheduledJob("b"),
+                map("a", 1, "b", Arrays.asList(true, null)),
+                Arrays.asList(1, "two"),
+                "text",
+                null
+        );
+        for (Object value : values) {
+            assertEquals(MAPPER.writeValueAsString(value), formatter.format(value));
+        }
+    }
+
+    @Test
+    public void writersAreCachedPerType() {
+        JsonFormatter formatter = new JsonFormatter();
+        assertSame(formatter.writers.get(Job.class), formatter.writers.get(Job.class));
+        assertSame(formatter.writers.get(Job.class), formatter.writers.writer(new Job("a", null)));
+        assertNotSame(formatter.writers.get(Job.class), formatter.writers.get(ScheduledJob.class));
+        assertSame(formatter.writers.writer, formatter.writers.writer(null));
+    }
+
+    @Test
+    public void withBaseSharesWriters() {
+        JsonFormatter formatter = JsonFormatter.builder().indent(true).build();
+        OutputFormatter copy = formatter.withBase(new ToStringFormatter());
+        assertTrue(copy instanceof JsonFormatter);
+        assertSame(formatter.writers, ((JsonFormatter) copy).writers);
+        assertSame(formatter.mapper, ((JsonFormatter) copy).mapper);
+    }
+
+    @Test
+    public void cacheKeyIncludesConfiguration() {
+        String plain = new JsonFormatter().getCacheKey();
+        String indented = JsonFormatter.builder().indent(true).build().getCacheKey();
+        assertEquals(plain, new JsonFormatter().withBase(new ToStringFormatter()).getCacheKey());
+        assertEquals(indented, JsonFormatter.builder().indent(true).build().getCacheKey());
+        assertNotEquals(plain, indented);
+    }
+
+    @Test
+    public void builderIndent() throws IOException {
+        Map<String, Object> data = map("a", 1, "b", Arrays.asList(1, 2));
+        assertEquals(
+                MAPPER.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(data),
+                JsonFormatter.builder().indent(true).build().format(data)
+        );
+        assertEquals(MAPPER.writeValueAsString(data), JsonFormatter.builder().build().format(data));
+    }
+
+    @Test
+    public void builderBase() {
+        Formatable empty = new Formatable() {
+            @Override
+            public String toString() {
+                return "empty";
+            }
+        };
+        JsonFormatter formatter = JsonFormatter.builder().base(new ToStringFormatter()).build();
+        assertEquals("empty", formatter.format(empty));
+        assertEquals("\"text\"", formatter.format("text"));
+    }
+
+    @Test
+    public void builderMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        assertSame(mapper, JsonFormatter.builder().mapper(mapper).build().mapper);
+    }
+
+    @Test
+    public void builderBlackbirdCopiesMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonFormatter formatter = JsonFormatter.builder().mapper(mapper).blackbird(true).build();
+        assertNotSame(mapper, formatter.mapper);
+        assertTrue(mapper.getRegisteredModuleIds().isEmpty());
+        assertEquals(
+                MAPPER.writeValueAsString(new Job("a", Collections.singletonList("x"))),
+                formatter.format(new Job("a", Collections.singletonList("x")))
+        );
+        assertSame(
+                JsonFormatter.builder().blackbird(true).build().mapper,
+                JsonFormatter.builder().blackbird(true).build().mapper
+        );
+    }
+
+    @Test
+    public void streamedItems() throws IOException {
+        List<Object> data = Arrays.asList(map("a", 1), "b", null);
+        List<String> chunks = chunks(new JsonFormatter(), items(data));
+        assertEquals(Arrays.asList("[", "{\"a\":1},", "\"b\",", "null", "]"), chunks);
+        assertEquals(data, MAPPER.readValue(String.join("\n", chunks), List.class));
+    }
+
+    @Test
+    public void streamedItemsIndented() throws IOException {
+        List<Object> data = Arrays.asList(map("a", 1, "b", Arrays.asList(1, 2)), "c");
+        List<String> chunks = chunks(JsonFormatter.builder().indent(true).build(), items(data));
+        assertEquals(
+                Arrays.asList(
+                        "[",
+                        "  {\n    \"a\" : 1,\n    \"b\" : [ 1, 2 ]\n  },",
+                        "  \"c\"",
+                        "]"
+                ),
+                chunks
+        );
+        assertEquals(data, MAPPER.readValue(String.join("\n", chunks), List.class));
+    }
+
+    @Test
+    public void streamedEntries() throws IOException {
+        Map<String, Object> data = map("a", 1, "b", map("c", "d"));
+        List<String> chunks = chunks(new JsonFormatter(), entries(data));
+        assertEquals(Arrays.asList("{", "\"a\":1,", "\"b\":{\"c\":\"d\"}", "}"), chunks);
+        assertEquals(data, MAPPER.readValue(String.join("\n", chunks), Map.class));
+    }
+
+    @Test
+    public void streamedEntriesIndented() throws IOException {
+        Map<String, Object> data = map("a", 1, "b", map("c", "d"));
+        List<String> chunks = chunks(JsonFormatter.builder().indent(true).build(), entries(data));
+        assertEquals(
+                Arrays.asList("{", "  \"a\" : 1,", "  \"b\" : {\n    \"c\" : \"d\"\n  }", "}"),
+                chunks
+        );
+        assertEquals(data, MAPPER.readValue(String.join("\n", chunks), Map.class));
+    }
+
+    @Test
+    public void streamedEmpty() {
+        assertEquals(Arrays.asList("[", "]"), chunks(new JsonFormatter(), items(Collections.emptyList())));
+        assertEquals(Arrays.asList("{", "}"), chunks(new JsonFormatter(), entries(Collections.emptyMap())));
+    }
+
+    @Test
+    public void listAndMapDataAreNotStreamed() {
+        JsonFormatter formatter = new JsonFormatter();
+        Formatable list = new Formatable() {
+            @Override
+            public List<?> asList() {
+                return Arrays.asList(1, 2);
+            }
+        };
+        Formatable map = new Formatable() {
+            @Override
+            public Map<?, ?> asMap() {
+                return map("a", 1);
+            }
+        };
+        assertEquals(Collections.singletonList("[1,2]"), chunks(formatter, list));
+        assertEquals(Collections.singletonList("{\"a\":1}"), chunks(formatter, map));
+    }
+}
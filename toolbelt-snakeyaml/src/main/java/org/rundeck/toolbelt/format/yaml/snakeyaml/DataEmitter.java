@@ -0,0 +1,235 @@
+package org.rundeck.toolbelt.format.yaml.snakeyaml;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.*;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Writes plain data, i.e. maps, lists, strings, numbers, booleans and nulls, directly as YAML events, without the
+ * representer and its node graph. The output is the same as {@link org.yaml.snakeyaml.Yaml#dump(Object)} with the default
+ * representer. Other data is declined, so that it can be dumped in the usual way.
+ */
+final class DataEmitter {
+    private static final Pattern MULTILINE = Pattern.compile("\n|\u0085|\u2028|\u2029");
+    private static final Set<Class<?>> INTEGERS = new HashSet<>(Arrays.asList(
+            Byte.class,
+            Short.class,
+            Integer.class,
+            Long.class,
+            BigInteger.class
+    ));
+
+    private final DumperOptions options;
+    private final Resolver resolver = new Resolver();
+    private final String sequenceTag = Tag.SEQ.getValue();
+    private final String mappingTag = Tag.MAP.getValue();
+    private final boolean sequenceImplicit = Tag.SEQ.equals(resolver.resolve(NodeId.sequence, null, true));
+    private final boolean mappingImplicit = Tag.MAP.equals(resolver.resolve(NodeId.mapping, null, true));
+
+    /**
+     * Thrown to decline data which is not supported
+     */
+    private static final class Declined extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Declined() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Declined DECLINED = new Declined();
+
+    /**
+     * Scalar or collection, with its style decided
+     */
+    private static final class Item {
+        final Tag tag;
+        final String value;
+        final DumperOptions.ScalarStyle style;
+        final List<Item> children;
+        final boolean mapping;
+        boolean flow;
+
+        Item(Tag tag, String value, DumperOptions.ScalarStyle style) {
+            this.tag = tag;
+            this.value = value;
+            this.style = style;
+            this.children = null;
+            this.mapping = false;
+        }
+
+        Item(List<Item> children, boolean mapping) {
+            this.tag = null;
+            this.value = null;
+            this.style = null;
+            this.children = children;
+            this.mapping = mapping;
+        }
+
+        boolean isPlainScalar() {
+            return null == children && style == DumperOptions.ScalarStyle.PLAIN;
+        }
+    }
+
+    DataEmitter(final DumperOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * @param data data
+     *
+     * @return YAML text, or null if the data is not supported
+     */
+    String dump(Object data) {
+        Item root;
+        try {
+            root = item(data, Collections.newSetFromMap(new IdentityHashMap<>()));
+        } catch (Declined e) {
+            return null;
+        }
+        StringWriter writer = new StringWriter();
+        Emitter emitter = new Emitter(writer, options);
+        try {
+            emitter.emit(new StreamStartEvent(null, null));
+            emitter.emit(new DocumentStartEvent(
+                    null,
+                    null,
+                    options.isExplicitStart(),
+                    options.getVersion(),
+                    options.getTags()
+            ));
+            emit(emitter, root);
+            emitter.emit(new DocumentEndEvent(null, null, options.isExplicitEnd()));
+            emitter.emit(new StreamEndEvent(null, null));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Converts the data, the same way as the default representer
+     *
+     * @param seen collections already converted, a collection which occurs more than once would need an anchor
+     */
+    private Item item(Object data, Set<Object> seen) throws Declined {
+        if (null == data) {
+            return scalar(Tag.NULL, "null");
+        }
+        Class<?> type = data.getClass();
+        if (type == String.class) {
+            String value = (String) data;
+            if (!StreamReader.isPrintable(value)) {
+                throw DECLINED;
+            }
+            DumperOptions.ScalarStyle style = options.getDefaultScalarStyle();
+            if (style == DumperOptions.ScalarStyle.PLAIN && MULTILINE.matcher(value).find()) {
+                style = DumperOptions.ScalarStyle.LITERAL;
+            }
+            return new Item(Tag.STR, value, style);
+        } else if (type == Boolean.class) {
+            return scalar(Tag.BOOL, data.toString());
+        } else if (INTEGERS.contains(type)) {
+            return scalar(Tag.INT, data.toString());
+        } else if (type == Float.class && !Float.isFinite((Float) data)) {
+            //the representer writes the special values only for Double, e.g. NaN as !!float 'NaN' for Float
+            throw DECLINED;
+        } else if (type == Double.class || type == Float.class || type == BigDecimal.class) {
+            return scalar(Tag.FLOAT, floatValue((Number) data));
+        } else if (data instanceof Map) {
+            if (!seen.add(data)) {
+                throw DECLINED;
+            }
+            List<Item> children = new ArrayList<>();
+            boolean flow = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet()) {
+                Item key = item(entry.getKey(), seen);
+                Item value = item(entry.getValue(), seen);
+                flow &= key.isPlainScalar() && value.isPlainScalar();
+                children.add(key);
+                children.add(value);
+            }
+            return collection(children, true, flow);
+        } else if (data instanceof List) {
+            if (!seen.add(data)) {
+                throw DECLINED;
+            }
+            List<Item> children = new ArrayList<>();
+            boolean flow = true;
+            for (Object child : (List<?>) data) {
+                Item value = item(child, seen);
+                flow &= value.isPlainScalar();
+                children.add(value);
+            }
+            return collection(children, false, flow);
+        }
+        throw DECLINED;
+    }
+
+    private Item scalar(Tag tag, String value) {
+        return new Item(tag, value, options.getDefaultScalarStyle());
+    }
+
+    private Item collection(List<Item> children, boolean mapping, boolean bestFlow) {
+        Item item = new Item(children, mapping);
+        DumperOptions.FlowStyle style = options.getDefaultFlowStyle();
+        item.flow = style == DumperOptions.FlowStyle.AUTO ? bestFlow : style == DumperOptions.FlowStyle.FLOW;
+        return item;
+    }
+
+    private static String floatValue(Number number) {
+        if (number instanceof Double) {
+            double value = number.doubleValue();
+            if (Double.isNaN(value)) {
+                return ".NaN";
+            } else if (value == Double.POSITIVE_INFINITY) {
+                return ".inf";
+            } else if (value == Double.NEGATIVE_INFINITY) {
+                return "-.inf";
+            }
+        }
+        return number.toString();
+    }
+
+    private void emit(Emitter emitter, Item item) throws IOException {
+        if (null == item.children) {
+            Tag detected = resolver.resolve(NodeId.scalar, item.value, true);
+            Tag resolved = resolver.resolve(NodeId.scalar, item.value, false);
+            emitter.emit(new ScalarEvent(
+                    null,
+                    item.tag.getValue(),
+                    new ImplicitTuple(item.tag.equals(detected), item.tag.equals(resolved)),
+                    item.value,
+                    null,
+                    null,
+                    item.style
+            ));
+            return;
+        }
+        DumperOptions.FlowStyle style = item.flow ? DumperOptions.FlowStyle.FLOW : DumperOptions.FlowStyle.BLOCK;
+        if (item.mapping) {
+            emitter.emit(new MappingStartEvent(null, mappingTag, mappingImplicit, null, null, style));
+        } else {
+            emitter.emit(new SequenceStartEvent(null, sequenceTag, sequenceImplicit, null, null, style));
+        }
+        for (Item child : item.children) {
+            emit(emitter, child);
+        }
+        if (item.mapping) {
+            emitter.emit(new MappingEndEvent(null, null));
+        } else {
+            emitter.emit(new SequenceEndEvent(null, null));
+        }
+    }
+}
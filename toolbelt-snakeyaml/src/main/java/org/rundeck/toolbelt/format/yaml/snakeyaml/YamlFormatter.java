@@ -6,18 +6,59 @@ import org.rundeck.toolbelt.OutputFormatter;
 import org.rundeck.toolbelt.ToStringFormatter;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.introspector.BeanAccess;
+import org.yaml.snakeyaml.introspector.Property;
+import org.yaml.snakeyaml.introspector.PropertyUtils;
 import org.yaml.snakeyaml.representer.Representer;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * Format objects as YAML, this will convert any Map/Collection into Yaml, and any Object that implements {@link
  * Formatable} and returns a non-null Map or List. If the object does not correspond to one of those inputs, the base
  * formatter will be used
+ * <p>
+ * Formatters created without a {@link Representer} share the bean property metadata, so bean introspection happens
+ * once per type. Formatters created by {@link #builder()} can write plain data directly as YAML events, which avoids
+ * the representer for maps, lists and scalars.
  */
 public class YamlFormatter extends BaseDataOutputFormatter {
     private final Yaml yaml;
+    private final DataEmitter emitter;
+    private final String cacheKey;
+
+    /**
+     * Property metadata shared by formatters, the cache is not otherwise thread safe
+     */
+    private static final class SharedPropertyUtils extends PropertyUtils {
+        static final PropertyUtils INSTANCE = new SharedPropertyUtils();
+
+        @Override
+        public synchronized Set<Property> getProperties(final Class<?> type) {
+            return super.getProperties(type);
+        }
+
+        @Override
+        public synchronized Set<Property> getProperties(final Class<?> type, final BeanAccess bAccess) {
+            return super.getProperties(type, bAccess);
+        }
+
+        @Override
+        public synchronized Property getProperty(final Class<?> type, final String name) {
+            return super.getProperty(type, name);
+        }
+
+        @Override
+        public synchronized Property getProperty(final Class<?> type, final String name, final BeanAccess bAccess) {
+            return super.getProperty(type, name, bAccess);
+        }
+    }
+
     /**
      */
     public YamlFormatter() {
@@ -36,6 +77,8 @@ public class YamlFormatter extends BaseDataOutputFormatter {
     ) {
         super(dataFormatter);
         this.yaml = yaml;
+        this.emitter = null;
+        this.cacheKey = instanceKey(yaml);
     }
 
 
@@ -43,31 +86,49 @@ public class YamlFormatter extends BaseDataOutputFormatter {
      * @param base base formatter
      */
     public YamlFormatter(final OutputFormatter base) {
-        this(new Yaml(), base);
+        this(base, new DumperOptions());
     }
 
     public YamlFormatter(
             final OutputFormatter base,
             final Function<Object, Optional<Formatable>> dataFormatter,
             final Yaml yaml
+    ) {
+        this(base, dataFormatter, yaml, null, instanceKey(yaml));
+    }
+
+    private YamlFormatter(
+            final OutputFormatter base,
+            final Function<Object, Optional<Formatable>> dataFormatter,
+            final Yaml yaml,
+            final DataEmitter emitter,
+            final String cacheKey
     ) {
         super(base, dataFormatter);
         this.yaml = yaml;
+        this.emitter = emitter;
+        this.cacheKey = cacheKey;
     }
 
     /**
      * @param base base formatter
      */
     private YamlFormatter(Yaml yaml, final OutputFormatter base) {
+        this(yaml, base, instanceKey(yaml));
+    }
+
+    private YamlFormatter(Yaml yaml, final OutputFormatter base, final String cacheKey) {
         super(base);
         this.yaml = yaml;
+        this.emitter = null;
+        this.cacheKey = cacheKey;
     }
 
     @Override
     protected OutputFormatter withBase(
             final Function<Object, Optional<Formatable>> dataFormatter, final OutputFormatter base
     ) {
-        return new YamlFormatter(base, dataFormatter, yaml);
+        return new YamlFormatter(base, dataFormatter, yaml, emitter, cacheKey);
     }
 
     /**
@@ -75,8 +136,106 @@ public class YamlFormatter extends BaseDataOutputFormatter {
      * @param options yaml options
      */
     public YamlFormatter(final OutputFormatter base, DumperOptions options) {
-        super(base);
-        this.yaml = new Yaml(options);
+        this(newYaml(options), base, optionsKey(options));
+    }
+
+    /**
+     * @return class and dumper options, or the Yaml instance if it was given, as its options are not available
+     */
+    @Override
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    private static String instanceKey(Yaml yaml) {
+        return YamlFormatter.class.getName() + "@" + Integer.toHexString(System.identityHashCode(yaml));
+    }
+
+    private static String optionsKey(DumperOptions options) {
+        return YamlFormatter.class.getName() + "[" + String.join(
+                "|",
+                String.valueOf(options.getDefaultFlowStyle()),
+                String.valueOf(options.getDefaultScalarStyle()),
+                String.valueOf(options.getIndent()),
+                String.valueOf(options.getIndicatorIndent()),
+                String.valueOf(options.getIndentWithIndicator()),
+                String.valueOf(options.getWidth()),
+                String.valueOf(options.getSplitLines()),
+                String.valueOf(options.isAllowUnicode()),
+                String.valueOf(options.isPrettyFlow()),
+                String.valueOf(options.isCanonical()),
+                String.valueOf(options.isExplicitStart()),
+                String.valueOf(options.isExplicitEnd()),
+                String.valueOf(options.getLineBreak()),
+                String.valueOf(options.getVersion()),
+                String.valueOf(options.getTags())
+        ) + "]";
+    }
+
+    /**
+     * @param options yaml options
+     *
+     * @return Yaml using the shared property metadata
+     */
+    private static Yaml newYaml(DumperOptions options) {
+        Representer representer = new Representer(options);
+        representer.setPropertyUtils(SharedPropertyUtils.INSTANCE);
+        return new Yaml(representer, options);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private DumperOptions options;
+        private boolean direct = true;
+        private OutputFormatter base = new ToStringFormatter();
+        private Function<Object, Optional<Formatable>> dataFormatter;
+
+        /**
+         * @param options yaml options
+         */
+        public Builder options(final DumperOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * @param direct true to write maps, lists and scalars directly as YAML events (default true), other objects
+         *               use the representer
+         */
+        public Builder direct(final boolean direct) {
+            this.direct = direct;
+            return this;
+        }
+
+        /**
+         * @param base formatter for objects which are not data
+         */
+        public Builder base(final OutputFormatter base) {
+            this.base = base;
+            return this;
+        }
+
+        /**
+         * @param dataFormatter converts objects to data
+         */
+        public Builder dataFormatter(final Function<Object, Optional<Formatable>> dataFormatter) {
+            this.dataFormatter = dataFormatter;
+            return this;
+        }
+
+        public YamlFormatter build() {
+            DumperOptions use = null != options ? options : new DumperOptions();
+            return new YamlFormatter(
+                    base,
+                    dataFormatter,
+                    newYaml(use),
+                    direct ? new DataEmitter(use) : null,
+                    optionsKey(use)
+            );
+        }
     }
 
     @Override
@@ -84,8 +243,62 @@ public class YamlFormatter extends BaseDataOutputFormatter {
         return true;
     }
 
+    @Override
+    protected boolean canFormatType(final Class<?> type) {
+        return true;
+    }
+
     @Override
     protected String formatObject(final Object o) {
+        if (null != emitter) {
+            String text = emitter.dump(o);
+            if (null != text) {
+                return text;
+            }
+        }
         return yaml.dump(o);
     }
+
+    /**
+     * Writes each item as a sequence entry as it is produced
+     */
+    @Override
+    protected void formatItems(final Iterator<?> items, final Consumer<String> out) {
+        if (!items.hasNext()) {
+            out.accept("[]");
+            return;
+        }
+        while (items.hasNext()) {
+            out.accept("- " + indent(dump(items.next())));
+        }
+    }
+
+    /**
+     * Writes each entry as a mapping entry as it is produced
+     */
+    @Override
+    protected void formatEntries(final Iterator<? extends Map.Entry<?, ?>> entries, final Consumer<String> out) {
+        if (!entries.hasNext()) {
+            out.accept("{}");
+            return;
+        }
+        while (entries.hasNext()) {
+            Map.Entry<?, ?> entry = entries.next();
+            String value = dump(entry.getValue());
+            if (value.contains("\n")) {
+                out.accept(dump(entry.getKey()) + ":\n  " + indent(value));
+            } else {
+                out.accept(dump(entry.getKey()) + ": " + value);
+            }
+        }
+    }
+
+    private String dump(Object o) {
+        String text = formatObject(o);
+        return text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private static String indent(String text) {
+        return text.replace("\n", "\n  ");
+    }
 }
@@ -0,0 +1,19 @@
+package org.rundeck.toolbelt.format.yaml.snakeyaml;
+
+import org.rundeck.toolbelt.OutputFormatter;
+import org.rundeck.toolbelt.OutputFormatterProvider;
+
+/**
+ * Provides the "yaml" output format
+ */
+public class YamlFormatterProvider implements OutputFormatterProvider {
+    @Override
+    public String getName() {
+        return "yaml";
+    }
+
+    @Override
+    public OutputFormatter create() {
+        return YamlFormatter.builder().build();
+    }
+}
@@ -0,0 +1,99 @@
+package org.rundeck.toolbelt.format.yaml.snakeyaml;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DataEmitterTest {
+    private static Map<Object, Object> map(Object... keysAndValues) {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static List<Object> data() {
+        List<Object> data = new ArrayList<>(Arrays.asList(
+                null,
+                "text",
+                "",
+                "123",
+                "true",
+                "null",
+                "a: b",
+                "- x",
+                " leading space",
+                "multi\nline",
+                "trailing newline\n",
+                "unicode \u00fc\u20ac",
+                1,
+                2L,
+                (byte) 3,
+                (short) 4,
+                new BigInteger("123456789012345678901234567890"),
+                1.5,
+                1e300,
+                1.5f,
+                Double.NaN,
+                Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY,
+                new BigDecimal("1.25"),
+                true,
+                false,
+                new ArrayList<>(),
+                new LinkedHashMap<>()
+        ));
+        Map<Object, Object> nested = map(
+                "a", 1,
+                "b", Arrays.asList(1, "two", null),
+                "c", map("d", "multi\nline", "e", new ArrayList<>(), "f", new LinkedHashMap<>())
+        );
+        data.add(nested);
+        data.add(Arrays.asList(nested, Arrays.asList(1, 2), Collections.emptyList(), "x"));
+        data.add(map(1, "int key", null, "null key", true, Arrays.asList("z")));
+        return data;
+    }
+
+    @Test
+    public void sameAsYamlDump() {
+        for (DumperOptions.FlowStyle flowStyle : DumperOptions.FlowStyle.values()) {
+            for (DumperOptions.ScalarStyle scalarStyle : DumperOptions.ScalarStyle.values()) {
+                DumperOptions options = new DumperOptions();
+                options.setDefaultFlowStyle(flowStyle);
+                options.setDefaultScalarStyle(scalarStyle);
+                DataEmitter emitter = new DataEmitter(options);
+                Yaml yaml = new Yaml(options);
+                for (Object value : data()) {
+                    assertEquals(
+                            flowStyle + " " + scalarStyle + " " + value,
+                            yaml.dump(value),
+                            emitter.dump(value)
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void declinesUnsupportedData() {
+        DataEmitter emitter = new DataEmitter(new DumperOptions());
+        List<Object> recursive = new ArrayList<>();
+        recursive.add(recursive);
+        List<Object> shared = Arrays.asList(1, 2);
+        assertNull(emitter.dump(Float.NaN));
+        assertNull(emitter.dump(Float.POSITIVE_INFINITY));
+        assertNull(emitter.dump(new Date(0)));
+        assertNull(emitter.dump(Collections.singletonList(new Object())));
+        assertNull(emitter.dump("bell \u0007"));
+        assertNull(emitter.dump(recursive));
+        assertNull(emitter.dump(Arrays.asList(shared, shared)));
+    }
+}
@@ -0,0 +1,109 @@
+package org.rundeck.toolbelt.format.yaml.snakeyaml;
+
+import org.junit.Test;
+import org.rundeck.toolbelt.Formatable;
+import org.rundeck.toolbelt.ToStringFormatter;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class YamlFormatterTest {
+    private static Formatable items(List<?> items) {
+        return new Formatable() {
+            @Override
+            public Iterator<?> asIterator() {
+                return items.iterator();
+            }
+        };
+    }
+
+    private static Formatable entries(Map<?, ?> map) {
+        return new Formatable() {
+            @Override
+            public Iterator<? extends Map.Entry<?, ?>> asEntryIterator() {
+                return map.entrySet().iterator();
+            }
+        };
+    }
+
+    private static List<String> chunks(YamlFormatter formatter, Object o) {
+        List<String> chunks = new ArrayList<>();
+        formatter.format(o, chunks::add);
+        return chunks;
+    }
+
+    private static Map<String, Object> map(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static List<YamlFormatter> formatters() {
+        return Arrays.asList(
+                new YamlFormatter(),
+                YamlFormatter.builder().build(),
+                YamlFormatter.builder().direct(false).build()
+        );
+    }
+
+    @Test
+    public void streamedItems() {
+        List<Object> data = Arrays.asList(map("a", 1, "b", Arrays.asList(1, 2)), "c", Arrays.asList("d", "e"));
+        for (YamlFormatter formatter : formatters()) {
+            List<String> chunks = chunks(formatter, items(data));
+            assertEquals(3, chunks.size());
+            assertEquals("- c", chunks.get(1));
+            assertEquals(data, new Yaml().load(String.join("\n", chunks)));
+        }
+    }
+
+    @Test
+    public void streamedEntries() {
+        Map<String, Object> data = map("a", 1, "b", map("c", "d", "e", Arrays.asList(1, 2)), "f", "multi\nline");
+        for (YamlFormatter formatter : formatters()) {
+            List<String> chunks = chunks(formatter, entries(data));
+            assertEquals(3, chunks.size());
+            assertEquals("a: 1", chunks.get(0));
+            assertEquals(data, new Yaml().load(String.join("\n", chunks)));
+        }
+    }
+
+    @Test
+    public void streamedEmpty() {
+        for (YamlFormatter formatter : formatters()) {
+            assertEquals(Collections.singletonList("[]"), chunks(formatter, items(Collections.emptyList())));
+            assertEquals(Collections.singletonList("{}"), chunks(formatter, entries(Collections.emptyMap())));
+        }
+    }
+
+    @Test
+    public void listAndMapDataAreNotStreamed() {
+        YamlFormatter formatter = new YamlFormatter();
+        Formatable list = new Formatable() {
+            @Override
+            public List<?> asList() {
+                return Arrays.asList(1, 2);
+            }
+        };
+        assertEquals(Collections.singletonList(formatter.format(Arrays.asList(1, 2))), chunks(formatter, list));
+    }
+
+    @Test
+    public void cacheKeyIncludesOptions() {
+        DumperOptions block = new DumperOptions();
+        block.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        String plain = new YamlFormatter().getCacheKey();
+        String blockKey = YamlFormatter.builder().options(block).build().getCacheKey();
+        assertEquals(plain, YamlFormatter.builder().build().getCacheKey());
+        assertEquals(plain, new YamlFormatter().withBase(new ToStringFormatter()).getCacheKey());
+        assertEquals(blockKey, new YamlFormatter(new ToStringFormatter(), block).getCacheKey());
+        assertNotEquals(plain, blockKey);
+        assertNotEquals(plain, new YamlFormatter(new ToStringFormatter(), o -> Optional.empty(), new Yaml()).getCacheKey());
+    }
+}
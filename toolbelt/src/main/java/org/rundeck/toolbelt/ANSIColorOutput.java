@@ -10,6 +10,7 @@ import java.util.regex.Pattern;
  */
 public class ANSIColorOutput implements CommandOutput, OutputFormatter {
     private static final Object ESC = "\u001B";
+    private static final Pattern TEMPLATE = Pattern.compile("\\$\\{(\\w+)\\}(?:%|(.+?)\\$\\$)", Pattern.DOTALL);
 
     /**
      * Default color config
@@ -261,6 +262,21 @@ public class ANSIColorOutput implements CommandOutput, OutputFormatter {
         }
     }
 
+    @Override
+    public void debug(final Object output) {
+        sink.debug(toColors(output));
+    }
+
+    @Override
+    public void trace(final Object output) {
+        sink.trace(toColors(output));
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return sink.isEnabled(channel);
+    }
+
     public static enum Color {
 
         RESET("0"),
@@ -368,8 +384,7 @@ public class ANSIColorOutput implements CommandOutput, OutputFormatter {
      * @return
      */
     public static ColorString colorizeTemplate(String template) {
-        Pattern pat = Pattern.compile("\\$\\{(\\w+)\\}(?:%|(.+?)\\$\\$)", Pattern.DOTALL);
-        Matcher m = pat.matcher(template);
+        Matcher m = TEMPLATE.matcher(template);
         StringBuffer sb = new StringBuffer();
         Set<ColorArea> colors = new HashSet<>();
         int last = 0;
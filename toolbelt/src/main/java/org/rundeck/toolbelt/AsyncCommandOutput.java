@@ -0,0 +1,457 @@
+package org.rundeck.toolbelt;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers output to another output on a single writer thread. Calls enqueue the message in a bounded lock-free ring
+ * buffer and return without waiting for the delegate, so command threads do not wait on terminal I/O. Messages are
+ * delivered in the order they were accepted. When the buffer is full the {@link Overflow} policy applies. Use {@link
+ * #flush()} to wait for delivery of all accepted messages.
+ */
+public class AsyncCommandOutput implements CommandOutput, Flushable, Closeable {
+    private static final byte INFO = 0;
+    private static final byte OUTPUT = 1;
+    private static final byte WARNING = 2;
+    private static final byte ERROR = 3;
+    private static final byte DEBUG = 4;
+    private static final byte TRACE = 5;
+
+    /**
+     * Behavior when the buffer is full
+     */
+    public enum Overflow {
+        /**
+         * Wait for space in the buffer
+         */
+        BLOCK,
+        /**
+         * Discard info messages, and wait for space for other messages
+         */
+        DROP_INFO,
+        /**
+         * Write messages to a temporary file until the writer catches up. Spilled messages are converted to strings, so
+         * colorization is lost
+         */
+        SPILL
+    }
+
+    private final CommandOutput delegate;
+    private final Overflow overflow;
+    private final File spillDirectory;
+
+    private final int mask;
+    private final AtomicLongArray sequence;
+    private final AtomicReferenceArray<Object> messages;
+    private final byte[] channels;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long delivered;
+    private volatile boolean closed;
+    private volatile boolean idle;
+    private volatile RuntimeException failure;
+    private final Thread writer;
+
+    private final Object spillLock = new Object();
+    private volatile boolean spilling;
+    private File spillFile;
+    private DataOutputStream spillOut;
+    private long spillCount;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private CommandOutput delegate;
+        private int capacity = 1024;
+        private Overflow overflow = Overflow.BLOCK;
+        private File spillDirectory;
+        private String threadName = "toolbelt-output";
+
+        /**
+         * @param delegate output to deliver to
+         */
+        public Builder delegate(final CommandOutput delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * @param capacity buffer size, rounded up to a power of two (default 1024)
+         */
+        public Builder capacity(final int capacity) {
+            if (capacity < 2) {
+                throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param overflow policy when the buffer is full (default BLOCK)
+         */
+        public Builder overflow(final Overflow overflow) {
+            this.overflow = overflow;
+            return this;
+        }
+
+        /**
+         * @param spillDirectory directory for the spill file, default is the system temp dir
+         */
+        public Builder spillDirectory(final File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        /**
+         * @param threadName name of the writer thread
+         */
+        public Builder threadName(final String threadName) {
+            this.threadName = threadName;
+            return this;
+        }
+
+        public AsyncCommandOutput build() {
+            if (null == delegate) {
+                throw new IllegalStateException("delegate is required");
+            }
+            return new AsyncCommandOutput(this);
+        }
+    }
+
+    private AsyncCommandOutput(Builder builder) {
+        this.delegate = builder.delegate;
+        this.overflow = builder.overflow;
+        this.spillDirectory = builder.spillDirectory;
+        int size = Integer.highestOneBit(builder.capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        this.messages = new AtomicReferenceArray<>(size);
+        this.channels = new byte[size];
+        this.writer = new Thread(this::drain, builder.threadName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CommandOutput getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return number of messages discarded, i.e. info messages discarded by the {@link Overflow#DROP_INFO} policy, and
+     * spilled messages which could not be read back from the spill file
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void info(final Object output) {
+        submit(INFO, output);
+    }
+
+    @Override
+    public void output(final Object output) {
+        submit(OUTPUT, output);
+    }
+
+    @Override
+    public void error(final Object error) {
+        submit(ERROR, error);
+    }
+
+    @Override
+    public void warning(final Object error) {
+        submit(WARNING, error);
+    }
+
+    @Override
+    public void debug(final Object output) {
+        submit(DEBUG, output);
+    }
+
+    @Override
+    public void trace(final Object output) {
+        submit(TRACE, output);
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return delegate.isEnabled(channel);
+    }
+
+    private void submit(byte channel, Object message) {
+        if (closed) {
+            throw new IllegalStateException("Output is closed");
+        }
+        if (Thread.currentThread() == writer) {
+            //delegate produced output, deliver it in place to avoid waiting on itself
+            deliver(channel, message);
+            return;
+        }
+        if (!spilling && offer(channel, message)) {
+            wakeWriter();
+            return;
+        }
+        switch (overflow) {
+            case DROP_INFO:
+                if (channel == INFO) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                block(channel, message);
+                break;
+            case SPILL:
+                spill(channel, message);
+                break;
+            default:
+                block(channel, message);
+        }
+    }
+
+    private void block(byte channel, Object message) {
+        while (!offer(channel, message)) {
+            wakeWriter();
+            LockSupport.parkNanos(10_000L);
+        }
+        wakeWriter();
+    }
+
+    /**
+     * Add to the ring buffer, multiple producers may call concurrently
+     *
+     * @return false if the buffer is full
+     */
+    private boolean offer(byte channel, Object message) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequence.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    channels[index] = channel;
+                    messages.lazySet(index, message);
+                    //publishes the slot contents to the writer
+                    sequence.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Write the message to the spill file, unless the buffer has space and nothing is waiting in the spill file
+     */
+    private void spill(byte channel, Object message) {
+        synchronized (spillLock) {
+            if (!spilling) {
+                if (offer(channel, message)) {
+                    wakeWriter();
+                    return;
+                }
+                spilling = true;
+            }
+            try {
+                if (null == spillOut) {
+                    spillFile = File.createTempFile("toolbelt-output", ".spill", spillDirectory);
+                    spillFile.deleteOnExit();
+                    spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+                }
+                byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+                spillOut.writeByte(channel);
+                spillOut.writeInt(bytes.length);
+                spillOut.write(bytes);
+                spillCount++;
+                spilled.incrementAndGet();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            wakeWriter();
+        }
+    }
+
+    private void wakeWriter() {
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            if (pollAndDeliver()) {
+                continue;
+            }
+            if (spilling && drainSpill()) {
+                continue;
+            }
+            if (closed) {
+                return;
+            }
+            idle = true;
+            //recheck after publishing idle state, so a producer either sees it or its message is seen here
+            long pos = head;
+            if (sequence.get((int) (pos & mask)) != pos + 1 && !spilling && !closed) {
+                LockSupport.park(this);
+            }
+            idle = false;
+        }
+    }
+
+    /**
+     * Deliver the next buffered message, only called by the writer thread
+     *
+     * @return false if the buffer was empty
+     */
+    private boolean pollAndDeliver() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequence.get(index) != pos + 1) {
+            return false;
+        }
+        Object message = messages.get(index);
+        byte channel = channels[index];
+        messages.lazySet(index, null);
+        sequence.set(index, pos + mask + 1);
+        head = pos + 1;
+        deliver(channel, message);
+        delivered++;
+        return true;
+    }
+
+    /**
+     * Deliver spilled messages, once everything buffered before the spill began has been delivered. If the spill file
+     * cannot be read, the failure is recorded and the unread messages are counted as dropped
+     *
+     * @return true if the spill file was processed
+     */
+    private boolean drainSpill() {
+        File file;
+        DataOutputStream out;
+        long count;
+        synchronized (spillLock) {
+            if (null == spillOut) {
+                spilling = false;
+                return false;
+            }
+            file = spillFile;
+            out = spillOut;
+            count = spillCount;
+            spillOut = null;
+            spillFile = null;
+            spillCount = 0;
+            //later messages may use the buffer again, and are delivered after this file
+            spilling = false;
+        }
+        long read = 0;
+        try {
+            out.close();
+            Path path = file.toPath();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                while (read < count) {
+                    byte channel = in.readByte();
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    read++;
+                    deliver(channel, new String(bytes, StandardCharsets.UTF_8));
+                    delivered++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            dropped.addAndGet(count - read);
+            delivered += count - read;
+            fail(new RuntimeException("Failed to read spilled output", e));
+        } finally {
+            file.delete();
+        }
+        return true;
+    }
+
+    private void deliver(byte channel, Object message) {
+        try {
+            switch (channel) {
+                case INFO:
+                    delegate.info(message);
+                    break;
+                case OUTPUT:
+                    delegate.output(message);
+                    break;
+                case WARNING:
+                    delegate.warning(message);
+                    break;
+                case DEBUG:
+                    delegate.debug(message);
+                    break;
+                case TRACE:
+                    delegate.trace(message);
+                    break;
+                default:
+                    delegate.error(message);
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        if (null == failure) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Wait until all messages accepted before this call have been delivered, or a delivery has failed, then flush the
+     * delegate if it is {@link Flushable}
+     *
+     * @throws RuntimeException if the delegate failed to deliver a message
+     */
+    @Override
+    public void flush() {
+        if (Thread.currentThread() != writer) {
+            long target = tail.get() + spilled.get();
+            while (delivered < target && writer.isAlive() && null == failure) {
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(50_000L);
+            }
+        }
+        RuntimeException e = failure;
+        if (null != e) {
+            failure = null;
+            throw new RuntimeException("Failed to deliver output", e);
+        }
+        if (delegate instanceof Flushable) {
+            try {
+                ((Flushable) delegate).flush();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Flush and stop the writer thread, further output is rejected
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closed = true;
+            LockSupport.unpark(writer);
+        }
+    }
+}
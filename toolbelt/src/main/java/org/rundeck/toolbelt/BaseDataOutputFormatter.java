@@ -1,13 +1,120 @@
 package org.rundeck.toolbelt;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Base for formatters of structured data. How each class of object is rendered is resolved once and cached: objects
+ * are rendered as {@link Formatable} data, through an adapter registered for the type, or as a plain object. Plain maps
+ * and lists are formatted by {@link #formatObject(Object)}. Without a data formatter function, subclasses can accept
+ * whole types with {@link #canFormatType(Class)}, so plain objects are formatted without checks per object.
+ */
 public abstract class BaseDataOutputFormatter implements OutputFormatter {
     OutputFormatter base;
     Function<Object, Optional<Formatable>> dataFormatter;
+    private Adapters adapters = new Adapters();
+    /**
+     * Classes accepted by {@link #canFormatType(Class)}
+     */
+    private final ClassValue<Boolean> plainTypes = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            return canFormatType(type);
+        }
+    };
+
+    private enum Kind {
+        FORMATABLE,
+        ADAPTED,
+        OBJECT
+    }
+
+    private static final class Route {
+        static final Route FORMATABLE = new Route(Kind.FORMATABLE, null);
+        static final Route OBJECT = new Route(Kind.OBJECT, null);
+
+        final Kind kind;
+        final Function<Object, ? extends Formatable> adapter;
+
+        Route(final Kind kind, final Function<Object, ? extends Formatable> adapter) {
+            this.kind = kind;
+            this.adapter = adapter;
+        }
+    }
+
+    /**
+     * Registered adapters and the resolved route of each class, shared by copies made with {@link
+     * #withBase(OutputFormatter)}
+     */
+    private static final class Adapters {
+        private final Map<Class<?>, Function<Object, ? extends Formatable>> types = new ConcurrentHashMap<>();
+        private volatile ClassValue<Route> routes = newRoutes();
+
+        private ClassValue<Route> newRoutes() {
+            return new ClassValue<Route>() {
+                @Override
+                protected Route computeValue(final Class<?> type) {
+                    return resolve(type);
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> void add(Class<T> type, Function<? super T, ? extends Formatable> adapter) {
+            types.put(type, (Function<Object, ? extends Formatable>) adapter);
+            routes = newRoutes();
+        }
+
+        Route route(Object o) {
+            return null != o ? routes.get(o.getClass()) : Route.OBJECT;
+        }
+
+        private Route resolve(Class<?> type) {
+            if (Formatable.class.isAssignableFrom(type)) {
+                return Route.FORMATABLE;
+            }
+            if (!types.isEmpty()) {
+                Function<Object, ? extends Formatable> adapter = find(type);
+                if (null != adapter) {
+                    return new Route(Kind.ADAPTED, adapter);
+                }
+            }
+            return Route.OBJECT;
+        }
+
+        /**
+         * @return adapter for the nearest superclass, or else the first matching interface
+         */
+        private Function<Object, ? extends Formatable> find(Class<?> type) {
+            for (Class<?> c = type; null != c; c = c.getSuperclass()) {
+                Function<Object, ? extends Formatable> adapter = types.get(c);
+                if (null != adapter) {
+                    return adapter;
+                }
+            }
+            Deque<Class<?>> interfaces = new ArrayDeque<>();
+            for (Class<?> c = type; null != c; c = c.getSuperclass()) {
+                interfaces.addAll(Arrays.asList(c.getInterfaces()));
+            }
+            Set<Class<?>> seen = new HashSet<>();
+            while (!interfaces.isEmpty()) {
+                Class<?> c = interfaces.removeFirst();
+                if (!seen.add(c)) {
+                    continue;
+                }
+                Function<Object, ? extends Formatable> adapter = types.get(c);
+                if (null != adapter) {
+                    return adapter;
+                }
+                interfaces.addAll(Arrays.asList(c.getInterfaces()));
+            }
+            return null;
+        }
+    }
 
     public BaseDataOutputFormatter() {
     }
@@ -28,14 +135,27 @@ public abstract class BaseDataOutputFormatter implements OutputFormatter {
         this.dataFormatter = dataFormatter;
     }
 
+    /**
+     * Render objects of a type, and its subtypes, as the data returned by the adapter. Adapters are used before the
+     * data formatter function, and are shared with formatters created by {@link #withBase(OutputFormatter)}
+     *
+     * @param type    type
+     * @param adapter returns the data for an object, or null to format it as a plain object
+     *
+     * @return this formatter
+     */
+    public <T> BaseDataOutputFormatter adapter(Class<T> type, Function<? super T, ? extends Formatable> adapter) {
+        adapters.add(type, adapter);
+        return this;
+    }
+
     @Override
     public String format(final Object o) {
-        final Formatable value;
-        if (o instanceof Formatable) {
-            value = (Formatable) o;
-        } else {
-            value = null != dataFormatter ? dataFormatter.apply(o).orElse(null) : null;
+        final Route route = adapters.route(o);
+        if (isPlain(route, o)) {
+            return formatObject(o);
         }
+        final Formatable value = formatable(route, o);
         if (value != null) {
             List<?> objects = value.asList();
             if (null != objects) {
@@ -45,12 +165,113 @@ public abstract class BaseDataOutputFormatter implements OutputFormatter {
             if (null != map) {
                 return formatMap(map);
             }
+            try (Stream<?> stream = value.asStream()) {
+                if (null != stream) {
+                    return formatList(stream.collect(Collectors.toList()));
+                }
+            }
+            Iterator<? extends Map.Entry<?, ?>> entries = value.asEntryIterator();
+            if (null != entries) {
+                return formatMap(collect(entries));
+            }
         } else if (canFormatObject(o)) {
             return formatObject(o);
         }
         return null != base ? base.format(o) : o.toString();
     }
 
+    /**
+     * Formats streamed items and entries incrementally, using {@link #formatItems(Iterator, Consumer)} and {@link
+     * #formatEntries(Iterator, Consumer)}
+     */
+    @Override
+    public void format(final Object o, final Consumer<String> out) {
+        final Route route = adapters.route(o);
+        if (isPlain(route, o)) {
+            out.accept(formatObject(o));
+            return;
+        }
+        final Formatable value = formatable(route, o);
+        if (value != null) {
+            List<?> objects = value.asList();
+            if (null != objects) {
+                out.accept(formatList(objects));
+                return;
+            }
+            Map<?, ?> map = value.asMap();
+            if (null != map) {
+                out.accept(formatMap(map));
+                return;
+            }
+            try (Stream<?> stream = value.asStream()) {
+                if (null != stream) {
+                    formatItems(stream.iterator(), out);
+                    return;
+                }
+            }
+            Iterator<? extends Map.Entry<?, ?>> entries = value.asEntryIterator();
+            if (null != entries) {
+                formatEntries(entries, out);
+                return;
+            }
+        } else if (canFormatObject(o)) {
+            out.accept(formatObject(o));
+            return;
+        }
+        if (null != base) {
+            base.format(o, out);
+        } else {
+            out.accept(o.toString());
+        }
+    }
+
+    /**
+     * @return true if the object is formatted by {@link #formatObject(Object)} without the data formatter or per object
+     * checks
+     */
+    private boolean isPlain(final Route route, final Object o) {
+        return route.kind == Kind.OBJECT && null == dataFormatter && null != o && plainTypes.get(o.getClass());
+    }
+
+    private Formatable formatable(final Route route, final Object o) {
+        switch (route.kind) {
+            case FORMATABLE:
+                return (Formatable) o;
+            case ADAPTED:
+                return route.adapter.apply(o);
+            default:
+                return null != dataFormatter ? dataFormatter.apply(o).orElse(null) : null;
+        }
+    }
+
+    /**
+     * Format streamed list items, the default collects them and uses {@link #formatList(List)}
+     *
+     * @param items items
+     * @param out   receives formatted chunks
+     */
+    protected void formatItems(Iterator<?> items, Consumer<String> out) {
+        List<Object> collected = new ArrayList<>();
+        items.forEachRemaining(collected::add);
+        out.accept(formatList(collected));
+    }
+
+    /**
+     * Format streamed map entries, the default collects them and uses {@link #formatMap(Map)}
+     *
+     * @param entries entries
+     * @param out     receives formatted chunks
+     */
+    protected void formatEntries(Iterator<? extends Map.Entry<?, ?>> entries, Consumer<String> out) {
+        out.accept(formatMap(collect(entries)));
+    }
+
+    private static Map<Object, Object> collect(Iterator<? extends Map.Entry<?, ?>> entries) {
+        Map<Object, Object> collected = new LinkedHashMap<>();
+        entries.forEachRemaining(e -> collected.put(e.getKey(), e.getValue()));
+        return collected;
+    }
+
     protected String formatMap(Map value) {
         return formatObject(value);
     }
@@ -61,7 +282,11 @@ public abstract class BaseDataOutputFormatter implements OutputFormatter {
 
     @Override
     public OutputFormatter withBase(final OutputFormatter base) {
-        return withBase(dataFormatter, base);
+        OutputFormatter formatter = withBase(dataFormatter, base);
+        if (formatter instanceof BaseDataOutputFormatter) {
+            ((BaseDataOutputFormatter) formatter).adapters = adapters;
+        }
+        return formatter;
     }
 
     protected abstract OutputFormatter withBase(
@@ -71,6 +296,19 @@ public abstract class BaseDataOutputFormatter implements OutputFormatter {
 
     protected abstract boolean canFormatObject(Object value);
 
+    /**
+     * Checked once per class, for objects which are not {@link Formatable} and have no adapter, when there is no data
+     * formatter function
+     *
+     * @param type class of an object
+     *
+     * @return true if {@link #canFormatObject(Object)} is true for every object of the class, the default is false so
+     * that each object is checked
+     */
+    protected boolean canFormatType(Class<?> type) {
+        return false;
+    }
+
     protected abstract String formatObject(Object value);
 
 }
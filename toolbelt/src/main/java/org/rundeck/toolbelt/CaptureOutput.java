@@ -0,0 +1,181 @@
+package org.rundeck.toolbelt;
+
+import java.util.*;
+
+/**
+ * Records output text in memory, separately for each channel. The text for each channel is kept in fixed size chunks,
+ * and when it exceeds the limit the oldest chunks are discarded, so the most recent output is retained.
+ */
+public class CaptureOutput implements CommandOutput {
+    private final Set<Channel> channels;
+    private final int chunkSize;
+    private final long maxChars;
+    private final Map<Channel, Buffer> buffers = new EnumMap<>(Channel.class);
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Set<Channel> channels = EnumSet.allOf(Channel.class);
+        private int chunkSize = 8192;
+        private long maxChars = 16L * 1024 * 1024;
+
+        /**
+         * @param channels channels to capture, default all
+         */
+        public Builder channels(final Channel... channels) {
+            this.channels = EnumSet.noneOf(Channel.class);
+            this.channels.addAll(Arrays.asList(channels));
+            return this;
+        }
+
+        /**
+         * @param chunkSize chunk size in chars (default 8192)
+         */
+        public Builder chunkSize(final int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param maxChars chars to retain for each channel, the retained text may exceed this by up to one chunk
+         *                 (default 16M)
+         */
+        public Builder maxChars(final long maxChars) {
+            this.maxChars = maxChars;
+            return this;
+        }
+
+        public CaptureOutput build() {
+            return new CaptureOutput(this);
+        }
+    }
+
+    private CaptureOutput(Builder builder) {
+        this.channels = builder.channels;
+        this.chunkSize = builder.chunkSize;
+        this.maxChars = builder.maxChars;
+    }
+
+    private class Buffer {
+        final ArrayDeque<char[]> chunks = new ArrayDeque<>();
+        int fill;
+        long size;
+        long discarded;
+
+        void append(String text) {
+            int offset = 0;
+            while (offset < text.length()) {
+                if (chunks.isEmpty() || fill == chunkSize) {
+                    chunks.addLast(new char[chunkSize]);
+                    fill = 0;
+                }
+                int count = Math.min(chunkSize - fill, text.length() - offset);
+                text.getChars(offset, offset + count, chunks.peekLast(), fill);
+                fill += count;
+                offset += count;
+                size += count;
+            }
+            while (size - chunkSize >= maxChars && chunks.size() > 1) {
+                chunks.removeFirst();
+                size -= chunkSize;
+                discarded += chunkSize;
+            }
+        }
+
+        String text() {
+            StringBuilder sb = new StringBuilder((int) size);
+            Iterator<char[]> iterator = chunks.iterator();
+            while (iterator.hasNext()) {
+                char[] chunk = iterator.next();
+                sb.append(chunk, 0, iterator.hasNext() ? chunkSize : fill);
+            }
+            return sb.toString();
+        }
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return channels.contains(channel);
+    }
+
+    @Override
+    public void info(final Object output) {
+        capture(Channel.INFO, output);
+    }
+
+    @Override
+    public void output(final Object output) {
+        capture(Channel.OUTPUT, output);
+    }
+
+    @Override
+    public void error(final Object error) {
+        capture(Channel.ERROR, error);
+    }
+
+    @Override
+    public void warning(final Object error) {
+        capture(Channel.WARNING, error);
+    }
+
+    @Override
+    public void debug(final Object output) {
+        capture(Channel.DEBUG, output);
+    }
+
+    @Override
+    public void trace(final Object output) {
+        capture(Channel.TRACE, output);
+    }
+
+    private synchronized void capture(Channel channel, Object message) {
+        if (channels.contains(channel)) {
+            buffers.computeIfAbsent(channel, k -> new Buffer()).append(message + "\n");
+        }
+    }
+
+    /**
+     * @param channel channel
+     *
+     * @return captured text for the channel, each message followed by a newline
+     */
+    public synchronized String getText(Channel channel) {
+        Buffer buffer = buffers.get(channel);
+        return null != buffer ? buffer.text() : "";
+    }
+
+    /**
+     * @param channel channel
+     *
+     * @return captured lines for the channel, the first line may be partial if output was discarded
+     */
+    public List<String> getLines(Channel channel) {
+        String text = getText(channel);
+        if (text.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(text.substring(0, text.length() - 1).split("\n", -1)));
+    }
+
+    /**
+     * @param channel channel
+     *
+     * @return number of chars discarded for the channel because of the limit
+     */
+    public synchronized long getDiscarded(Channel channel) {
+        Buffer buffer = buffers.get(channel);
+        return null != buffer ? buffer.discarded : 0;
+    }
+
+    /**
+     * Discard all captured output
+     */
+    public synchronized void clear() {
+        buffers.clear();
+    }
+}
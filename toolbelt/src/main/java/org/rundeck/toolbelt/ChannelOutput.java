@@ -1,20 +1,125 @@
 package org.rundeck.toolbelt;
 
-import java.util.function.BiConsumer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 /**
- * Channels output to another output based on the method
+ * Channels output to another output based on the method. The destination for each channel is resolved when the
+ * configuration changes, so a message costs a single lookup. The routing can be changed at runtime, either for all
+ * threads, or for the current thread only, e.g. to silence info output for one of several parallel commands.
  */
 public class ChannelOutput implements CommandOutput {
-    CommandOutput fallback;
-    boolean infoEnabled = true;
-    CommandOutput info;
-    boolean outputEnabled = true;
-    CommandOutput output;
-    boolean warningEnabled = true;
-    CommandOutput warning;
-    boolean errorEnabled = true;
-    CommandOutput error;
+    private static final Channel[] CHANNELS = Channel.values();
+    private static final int INFO = Channel.INFO.ordinal();
+    private static final int OUTPUT = Channel.OUTPUT.ordinal();
+    private static final int WARNING = Channel.WARNING.ordinal();
+    private static final int ERROR = Channel.ERROR.ordinal();
+    private static final int DEBUG = Channel.DEBUG.ordinal();
+    private static final int TRACE = Channel.TRACE.ordinal();
+
+    private static final CommandOutput DISABLED = new CommandOutput() {
+        @Override
+        public void info(final Object output) {
+        }
+
+        @Override
+        public void output(final Object output) {
+        }
+
+        @Override
+        public void error(final Object error) {
+        }
+
+        @Override
+        public void warning(final Object error) {
+        }
+
+        @Override
+        public boolean isEnabled(final Channel channel) {
+            return false;
+        }
+    };
+
+    /**
+     * Immutable routing configuration, with the resolved destination of each channel
+     */
+    static final class Routes {
+        final CommandOutput fallback;
+        final CommandOutput[] outputs;
+        final boolean[] enabled;
+        final CommandOutput[] route;
+
+        Routes() {
+            this(null, new CommandOutput[CHANNELS.length], defaultEnabled());
+        }
+
+        /**
+         * @return all channels enabled except debug and trace
+         */
+        private static boolean[] defaultEnabled() {
+            boolean[] enabled = new boolean[CHANNELS.length];
+            Arrays.fill(enabled, true);
+            enabled[DEBUG] = false;
+            enabled[TRACE] = false;
+            return enabled;
+        }
+
+        private Routes(CommandOutput fallback, CommandOutput[] outputs, boolean[] enabled) {
+            this.fallback = fallback;
+            this.outputs = outputs;
+            this.enabled = enabled;
+            this.route = new CommandOutput[CHANNELS.length];
+            for (int i = 0; i < route.length; i++) {
+                CommandOutput dest = null != outputs[i] ? outputs[i] : fallback;
+                route[i] = enabled[i] && null != dest ? dest : DISABLED;
+            }
+        }
+
+        Routes withFallback(CommandOutput fallback) {
+            return new Routes(fallback, outputs, enabled);
+        }
+
+        Routes withOutput(Channel channel, CommandOutput output) {
+            CommandOutput[] copy = outputs.clone();
+            copy[channel.ordinal()] = output;
+            return new Routes(fallback, copy, enabled);
+        }
+
+        Routes withEnabled(Channel channel, boolean value) {
+            boolean[] copy = enabled.clone();
+            copy[channel.ordinal()] = value;
+            return new Routes(fallback, outputs, copy);
+        }
+    }
+
+    /**
+     * Routing overrides for one thread, applied on top of the shared routes
+     */
+    private static final class ThreadRoutes {
+        final UnaryOperator<Routes> override;
+        Routes base;
+        Routes resolved;
+
+        ThreadRoutes(final UnaryOperator<Routes> override) {
+            this.override = override;
+        }
+
+        Routes resolve(Routes shared) {
+            if (base != shared) {
+                resolved = override.apply(shared);
+                base = shared;
+            }
+            return resolved;
+        }
+    }
+
+    private final AtomicReference<Routes> routes;
+    private final ThreadLocal<ThreadRoutes> threadRoutes = new ThreadLocal<>();
+    /**
+     * set once any thread has overrides, so that the thread local is not consulted otherwise
+     */
+    private volatile boolean threadRouting;
 
     public Builder toBuilder() {
         return builder(this);
@@ -29,59 +134,91 @@ public class ChannelOutput implements CommandOutput {
     }
 
     public static class Builder {
-        ChannelOutput build;
+        Routes build;
 
         public Builder() {
-            build = new ChannelOutput();
+            build = new Routes();
         }
 
         public Builder(ChannelOutput output) {
-            build = new ChannelOutput(output);
+            build = output.routes.get();
         }
 
 
         public Builder fallback(final CommandOutput fallback) {
-            build.fallback = fallback;
+            build = build.withFallback(fallback);
             return this;
         }
 
         public Builder info(final CommandOutput info) {
-            build.info = info;
-            return this;
+            return channel(Channel.INFO, info);
         }
 
         public Builder infoEnabled(final boolean enabled) {
-            build.infoEnabled = enabled;
-            return this;
+            return enabled(Channel.INFO, enabled);
         }
 
         public Builder output(final CommandOutput output) {
-            build.output = output;
-            return this;
+            return channel(Channel.OUTPUT, output);
         }
 
         public Builder outputEnabled(final boolean enabled) {
-            build.outputEnabled = enabled;
-            return this;
+            return enabled(Channel.OUTPUT, enabled);
         }
 
         public Builder warning(final CommandOutput warning) {
-            build.warning = warning;
-            return this;
+            return channel(Channel.WARNING, warning);
         }
 
         public Builder warningEnabled(final boolean enabled) {
-            build.warningEnabled = enabled;
-            return this;
+            return enabled(Channel.WARNING, enabled);
         }
 
         public Builder error(final CommandOutput error) {
-            build.error = error;
-            return this;
+            return channel(Channel.ERROR, error);
         }
 
         public Builder errorEnabled(final boolean enabled) {
-            build.errorEnabled = enabled;
+            return enabled(Channel.ERROR, enabled);
+        }
+
+        public Builder debug(final CommandOutput debug) {
+            return channel(Channel.DEBUG, debug);
+        }
+
+        /**
+         * @param enabled true to enable debug output (default false)
+         */
+        public Builder debugEnabled(final boolean enabled) {
+            return enabled(Channel.DEBUG, enabled);
+        }
+
+        public Builder trace(final CommandOutput trace) {
+            return channel(Channel.TRACE, trace);
+        }
+
+        /**
+         * @param enabled true to enable trace output (default false)
+         */
+        public Builder traceEnabled(final boolean enabled) {
+            return enabled(Channel.TRACE, enabled);
+        }
+
+        /**
+         * @param channel channel
+         * @param output  destination for the channel, or null to use the fallback
+         */
+        public Builder channel(final Channel channel, final CommandOutput output) {
+            build = build.withOutput(channel, output);
+            return this;
+        }
+
+        /**
+         * @param channel channel
+         * @param enabled whether the channel is enabled
+         */
+        public Builder enabled(final Channel channel, final boolean enabled) {
+            build = build.withEnabled(channel, enabled);
             return this;
         }
 
@@ -90,64 +227,104 @@ public class ChannelOutput implements CommandOutput {
         }
     }
 
-    private ChannelOutput(
-    )
-    {
+    private ChannelOutput(Routes routes) {
+        this.routes = new AtomicReference<>(routes);
     }
 
-    private ChannelOutput(ChannelOutput output) {
-        this.fallback = output.fallback;
-        this.info = output.info;
-        this.output = output.output;
-        this.warning = output.warning;
-        this.error = output.error;
-        this.infoEnabled = output.infoEnabled;
-        this.outputEnabled = output.outputEnabled;
-        this.warningEnabled = output.warningEnabled;
-        this.errorEnabled = output.errorEnabled;
+    /**
+     * Change the routing for all threads. The changes are applied atomically
+     *
+     * @param changes changes to apply to a builder with the current configuration
+     */
+    public void reconfigure(UnaryOperator<Builder> changes) {
+        routes.updateAndGet(current -> {
+            Builder builder = new Builder();
+            builder.build = current;
+            return changes.apply(builder).build;
+        });
+    }
 
+    /**
+     * Enable or disable a channel for all threads
+     *
+     * @param channel channel
+     * @param enabled true to enable
+     */
+    public void setEnabled(Channel channel, boolean enabled) {
+        routes.updateAndGet(current -> current.withEnabled(channel, enabled));
     }
 
-    private void select(
-            final CommandOutput candidate,
-            final CommandOutput fallback,
-            final Object output,
-            BiConsumer<CommandOutput, Object> out
-    )
-    {
-        if (null != candidate) {
-            out.accept(candidate, output);
-        } else if (null != fallback) {
-            out.accept(fallback, output);
+    /**
+     * Change the routing for the current thread only. Overrides replace any previous overrides for the thread, and
+     * apply on top of the configuration for all threads, including later changes to it.
+     *
+     * @param changes changes to apply to a builder with the configuration for all threads
+     */
+    public void reconfigureThread(UnaryOperator<Builder> changes) {
+        threadRoutes.set(new ThreadRoutes(current -> {
+            Builder builder = new Builder();
+            builder.build = current;
+            return changes.apply(builder).build;
+        }));
+        threadRouting = true;
+    }
+
+    /**
+     * Remove overrides for the current thread
+     */
+    public void resetThread() {
+        threadRoutes.remove();
+    }
+
+    /**
+     * @param channel channel
+     *
+     * @return true if the channel is enabled and has a destination for the current thread
+     */
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        CommandOutput dest = route()[channel.ordinal()];
+        return dest != DISABLED && dest.isEnabled(channel);
+    }
+
+    private CommandOutput[] route() {
+        Routes shared = routes.get();
+        if (threadRouting) {
+            ThreadRoutes local = threadRoutes.get();
+            if (null != local) {
+                return local.resolve(shared).route;
+            }
         }
+        return shared.route;
     }
 
     @Override
     public void info(final Object msg) {
-        if (infoEnabled) {
-            select(info, fallback, msg, CommandOutput::info);
-        }
+        route()[INFO].info(msg);
     }
 
     @Override
     public void output(final Object msg) {
-
-        if (outputEnabled) {
-            select(output, fallback, msg, CommandOutput::output);
-        }
+        route()[OUTPUT].output(msg);
     }
 
     @Override
     public void error(final Object msg) {
-        if (errorEnabled) {
-            select(error, fallback, msg, CommandOutput::error);
-        }
+        route()[ERROR].error(msg);
     }
 
     @Override
     public void warning(final Object msg) {
-        if (warningEnabled) {
-            select(warning, fallback, msg, CommandOutput::warning);
-        }
+        route()[WARNING].warning(msg);
+    }
+
+    @Override
+    public void debug(final Object msg) {
+        route()[DEBUG].debug(msg);
+    }
+
+    @Override
+    public void trace(final Object msg) {
+        route()[TRACE].trace(msg);
     }
 }
@@ -42,4 +42,16 @@ public @interface Command {
      */
     String[] synonyms() default {};
 
+    /**
+     * @return true if a return value other than a boolean should be written to the output using the output formatter
+     */
+    boolean formatResult() default true;
+
+    /**
+     * @return seconds to reuse the output of this command when it is run again with the same arguments, if the
+     * ToolBelt has a {@link CommandCache}. Only output written to the {@link CommandOutput} is replayed, so the command
+     * should not have side effects. Default 0, always run the command
+     */
+    long cacheTtl() default 0;
+
 }
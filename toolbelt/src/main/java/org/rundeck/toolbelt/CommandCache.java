@@ -0,0 +1,385 @@
+package org.rundeck.toolbelt;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Stores the formatted output of commands in a directory, so that a later run of the same command with the same
+ * arguments can replay the output without invoking the command. Commands opt in with {@link Command#cacheTtl()}.
+ * <p>
+ * Entries are keyed by the command path, the arguments, the output format and its configuration (see {@link
+ * OutputFormatter#getCacheKey()}), and the values of the selected environment variables. Each entry is written to a temporary file and moved into place, so concurrent runs never
+ * read a partial entry. When the directory exceeds the size limit the least recently used entries are deleted.
+ * </p>
+ */
+public class CommandCache {
+    private static final int MAGIC = 0x54424330;
+    private static final String SUFFIX = ".cache";
+    private static final CommandOutput.Channel[] CHANNELS = CommandOutput.Channel.values();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final List<String> environment;
+    private final Function<String, String> getenv;
+    private final Clock clock;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Path directory;
+        private long maxBytes = 16L * 1024 * 1024;
+        private List<String> environment = new ArrayList<>();
+        private Function<String, String> getenv = System::getenv;
+        private Clock clock = Clock.systemUTC();
+
+        /**
+         * @param directory directory for cache entries, created if necessary
+         */
+        public Builder directory(final Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * @param maxBytes total size of the cache entries to retain (default 16M)
+         */
+        public Builder maxBytes(final long maxBytes) {
+            if (maxBytes < 1) {
+                throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param names environment variables which affect command output, such as a server URL or user, their values
+         *              are part of the cache key
+         */
+        public Builder environment(final String... names) {
+            this.environment.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        Builder getenv(final Function<String, String> getenv) {
+            this.getenv = getenv;
+            return this;
+        }
+
+        Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public CommandCache build() {
+            if (null == directory) {
+                throw new IllegalStateException("directory is required");
+            }
+            return new CommandCache(this);
+        }
+    }
+
+    private CommandCache(Builder builder) {
+        this.directory = builder.directory;
+        this.maxBytes = builder.maxBytes;
+        this.environment = new ArrayList<>(builder.environment);
+        this.getenv = builder.getenv;
+        this.clock = builder.clock;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Records output sent to the delegate, unless the recorded text exceeds the cache size
+     */
+    static class Recorder implements CommandOutput {
+        private final CommandOutput delegate;
+        private final long limit;
+        private final List<CommandOutput.Channel> channels = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private long size;
+        private boolean overflow;
+
+        Recorder(final CommandOutput delegate, final long limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean isEnabled(final Channel channel) {
+            return delegate.isEnabled(channel);
+        }
+
+        @Override
+        public void info(final Object output) {
+            record(Channel.INFO, output);
+            delegate.info(output);
+        }
+
+        @Override
+        public void output(final Object output) {
+            record(Channel.OUTPUT, output);
+            delegate.output(output);
+        }
+
+        @Override
+        public void error(final Object error) {
+            record(Channel.ERROR, error);
+            delegate.error(error);
+        }
+
+        @Override
+        public void warning(final Object error) {
+            record(Channel.WARNING, error);
+            delegate.warning(error);
+        }
+
+        @Override
+        public void debug(final Object output) {
+            record(Channel.DEBUG, output);
+            delegate.debug(output);
+        }
+
+        @Override
+        public void trace(final Object output) {
+            record(Channel.TRACE, output);
+            delegate.trace(output);
+        }
+
+        private synchronized void record(Channel channel, Object message) {
+            if (overflow) {
+                return;
+            }
+            String text = String.valueOf(message);
+            size += text.length();
+            if (size > limit) {
+                overflow = true;
+                channels.clear();
+                texts.clear();
+                return;
+            }
+            channels.add(channel);
+            texts.add(text);
+        }
+    }
+
+    /**
+     * @param commands  command path
+     * @param args      arguments
+     * @param formatter output formatter
+     *
+     * @return key for the command output
+     */
+    String key(List<String> commands, String[] args, OutputFormatter formatter) {
+        StringBuilder key = new StringBuilder();
+        for (String command : commands) {
+            key.append(command).append('\0');
+        }
+        key.append('\1');
+        for (String arg : args) {
+            key.append(arg).append('\0');
+        }
+        key.append('\1').append(null != formatter ? formatter.getCacheKey() : "").append('\1');
+        for (String name : environment) {
+            String value = getenv.apply(name);
+            key.append(name).append('=').append(null != value ? value : "").append('\0');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param delegate output
+     *
+     * @return output which records the text sent to the delegate
+     */
+    Recorder record(CommandOutput delegate) {
+        return new Recorder(delegate, maxBytes);
+    }
+
+    /**
+     * Send the cached output for the key to the output, if it has not expired
+     *
+     * @param key    key
+     * @param output output
+     *
+     * @return true if the output was cached
+     */
+    boolean replay(String key, CommandOutput output) {
+        Path file = file(key);
+        List<CommandOutput.Channel> channels = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || !key.equals(readString(input))) {
+                return false;
+            }
+            if (input.readLong() <= clock.millis()) {
+                Files.deleteIfExists(file);
+                return false;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                channels.add(CHANNELS[input.readUnsignedByte()]);
+                texts.add(readString(input));
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(clock.millis()));
+        } catch (IOException | RuntimeException e) {
+            //missing, unreadable or concurrently evicted
+            return false;
+        }
+        for (int i = 0; i < channels.size(); i++) {
+            write(output, channels.get(i), texts.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Store the recorded output, unless it exceeded the cache size, and evict entries if the cache is too large
+     *
+     * @param key      key
+     * @param recorder recorded output
+     * @param ttl      time to keep the entry
+     *
+     * @throws IOException if the entry cannot be written
+     */
+    void store(String key, Recorder recorder, Duration ttl) throws IOException {
+        synchronized (recorder) {
+            if (recorder.overflow) {
+                return;
+            }
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            try {
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temp))
+                ))
+                {
+                    output.writeInt(MAGIC);
+                    writeString(output, key);
+                    output.writeLong(clock.millis() + ttl.toMillis());
+                    output.writeInt(recorder.texts.size());
+                    for (int i = 0; i < recorder.texts.size(); i++) {
+                        output.writeByte(recorder.channels.get(i).ordinal());
+                        writeString(output, recorder.texts.get(i));
+                    }
+                }
+                Files.setLastModifiedTime(temp, FileTime.fromMillis(clock.millis()));
+                try {
+                    Files.move(temp, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Delete the least recently used entries until the total size is within the limit
+     */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, Entry> entries = new HashMap<>();
+        long total = 0;
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) list::iterator) {
+                if (!file.getFileName().toString().endsWith(SUFFIX)) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+                    entries.put(file, entry);
+                    files.add(file);
+                    total += entry.size;
+                } catch (NoSuchFileException e) {
+                    //evicted concurrently
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(file -> entries.get(file).modified));
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(file);
+            total -= entries.get(file).size;
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long modified;
+
+        Entry(final long size, final long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private Path file(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return directory.resolve(name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void write(CommandOutput output, CommandOutput.Channel channel, String text) {
+        if (!output.isEnabled(channel)) {
+            return;
+        }
+        switch (channel) {
+            case INFO:
+                output.info(text);
+                break;
+            case OUTPUT:
+                output.output(text);
+                break;
+            case WARNING:
+                output.warning(text);
+                break;
+            case ERROR:
+                output.error(text);
+                break;
+            case DEBUG:
+                output.debug(text);
+                break;
+            case TRACE:
+                output.trace(text);
+                break;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
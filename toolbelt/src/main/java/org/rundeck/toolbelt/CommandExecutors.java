@@ -0,0 +1,56 @@
+package org.rundeck.toolbelt;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for asynchronous commands
+ */
+public final class CommandExecutors {
+    private CommandExecutors() {
+    }
+
+    /**
+     * @return an executor which starts a virtual thread per task when the runtime supports them (Java 21), otherwise
+     * a cached pool of daemon threads
+     */
+    public static ExecutorService newDefault() {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        return null != virtual ? virtual : newDaemonThreadPool("toolbelt-command");
+    }
+
+    /**
+     * @return an executor which starts a virtual thread per task, or null if the runtime does not support them
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            //preview feature not enabled
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                return null;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @param name thread name prefix
+     *
+     * @return cached pool of daemon threads
+     */
+    public static ExecutorService newDaemonThreadPool(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
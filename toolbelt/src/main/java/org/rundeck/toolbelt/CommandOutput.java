@@ -1,9 +1,23 @@
 package org.rundeck.toolbelt;
 
+import java.util.function.Supplier;
+
 /**
  * Interface for output
  */
 public interface CommandOutput {
+    /**
+     * Output channels, corresponding to the output methods
+     */
+    enum Channel {
+        INFO,
+        OUTPUT,
+        WARNING,
+        ERROR,
+        DEBUG,
+        TRACE
+    }
+
     /**
      * Info level output, may be hidden for data/formatted output
      *
@@ -16,4 +30,85 @@ public interface CommandOutput {
 
     void warning(Object error);
 
+    /**
+     * Debug level output, disabled unless the output supports it
+     *
+     * @param output output
+     */
+    default void debug(Object output) {
+    }
+
+    /**
+     * Trace level output, disabled unless the output supports it
+     *
+     * @param output output
+     */
+    default void trace(Object output) {
+    }
+
+    /**
+     * Outputs may return false to indicate that messages for a channel are discarded, so that callers can skip
+     * producing or formatting them. By default debug and trace are disabled.
+     *
+     * @param channel channel
+     *
+     * @return true if messages for the channel may be shown
+     */
+    default boolean isEnabled(Channel channel) {
+        return channel != Channel.DEBUG && channel != Channel.TRACE;
+    }
+
+    /**
+     * @param output supplies the output, called only if the channel is enabled
+     */
+    default void info(Supplier<?> output) {
+        if (isEnabled(Channel.INFO)) {
+            info(null != output ? output.get() : null);
+        }
+    }
+
+    /**
+     * @param output supplies the output, called only if the channel is enabled
+     */
+    default void output(Supplier<?> output) {
+        if (isEnabled(Channel.OUTPUT)) {
+            output(null != output ? output.get() : null);
+        }
+    }
+
+    /**
+     * @param error supplies the output, called only if the channel is enabled
+     */
+    default void error(Supplier<?> error) {
+        if (isEnabled(Channel.ERROR)) {
+            error(null != error ? error.get() : null);
+        }
+    }
+
+    /**
+     * @param error supplies the output, called only if the channel is enabled
+     */
+    default void warning(Supplier<?> error) {
+        if (isEnabled(Channel.WARNING)) {
+            warning(null != error ? error.get() : null);
+        }
+    }
+
+    /**
+     * @param output supplies the output, called only if the channel is enabled
+     */
+    default void debug(Supplier<?> output) {
+        if (isEnabled(Channel.DEBUG)) {
+            debug(null != output ? output.get() : null);
+        }
+    }
+
+    /**
+     * @param output supplies the output, called only if the channel is enabled
+     */
+    default void trace(Supplier<?> output) {
+        if (isEnabled(Channel.TRACE)) {
+            trace(null != output ? output.get() : null);
+        }
+    }
 }
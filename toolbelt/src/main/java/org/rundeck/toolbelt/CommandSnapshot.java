@@ -0,0 +1,339 @@
+package org.rundeck.toolbelt;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * The command metadata of introspected classes, i.e. what the {@link Command}, {@link SubCommand} and {@link Hidden}
+ * annotations declare for a class and its methods. The metadata can be saved to a binary file and loaded on later
+ * runs, so that classes are not scanned for annotated methods and command methods are only resolved when invoked.
+ * The file records a fingerprint, usually of the classpath, and is ignored when the fingerprint differs.
+ */
+class CommandSnapshot {
+    private static final int MAGIC = 0x54425331;
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{
+                boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class
+        }) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    private final Path file;
+    private final String fingerprint;
+    private final Map<String, TypeInfo> types = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    /**
+     * Command metadata for a class
+     */
+    static final class TypeInfo {
+        String name;
+        Set<String> synonyms = new HashSet<>();
+        String description;
+        boolean sub;
+        boolean hidden;
+        List<String> path = new ArrayList<>();
+        List<String> descriptions = new ArrayList<>();
+        List<MethodInfo> methods = new ArrayList<>();
+    }
+
+    /**
+     * Command metadata for a method
+     */
+    static final class MethodInfo {
+        String name;
+        String method;
+        String[] parameterTypes;
+        String description;
+        boolean solo;
+        boolean hidden;
+        boolean isDefault;
+        boolean formatResult;
+        long cacheTtl;
+        Set<String> synonyms = new HashSet<>();
+
+        /**
+         * @param type class declaring or inheriting the method
+         *
+         * @return the method
+         */
+        Method resolve(Class<?> type) {
+            try {
+                Class<?>[] parameters = new Class<?>[parameterTypes.length];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    Class<?> primitive = PRIMITIVES.get(parameterTypes[i]);
+                    parameters[i] = null != primitive
+                                    ? primitive
+                                    : Class.forName(parameterTypes[i], false, type.getClassLoader());
+                }
+                return type.getMethod(method, parameters);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                throw new IllegalStateException(String.format(
+                        "Command method %s of %s in the command snapshot was not found, the snapshot is out of date",
+                        method,
+                        type.getName()
+                ), e);
+            }
+        }
+    }
+
+    /**
+     * @param file        snapshot file, or null to keep metadata in memory only
+     * @param fingerprint fingerprint of the classes, a file with a different fingerprint is ignored
+     */
+    CommandSnapshot(final Path file, final String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        if (null != file) {
+            load();
+        }
+    }
+
+    /**
+     * @param type class
+     *
+     * @return command metadata for the class, from the snapshot if present, otherwise from its annotations
+     */
+    TypeInfo type(Class<?> type) {
+        TypeInfo info = types.get(type.getName());
+        if (null == info) {
+            //classes may be scanned concurrently
+            info = scan(type);
+            TypeInfo existing = types.putIfAbsent(type.getName(), info);
+            if (null != existing) {
+                return existing;
+            }
+            modified = true;
+        }
+        return info;
+    }
+
+    static TypeInfo scan(Class<?> type) {
+        TypeInfo info = new TypeInfo();
+        Command annotation = type.getAnnotation(Command.class);
+        String cmd = null != annotation ? annotation.value() : "";
+        info.name = "".equals(cmd) ? type.getSimpleName().toLowerCase() : cmd;
+        if (null != annotation) {
+            info.synonyms.addAll(Arrays.asList(annotation.synonyms()));
+            info.description = annotation.description();
+            info.hidden = annotation.isHidden();
+        }
+        SubCommand subCommand = type.getAnnotation(SubCommand.class);
+        if (null != subCommand) {
+            info.sub = true;
+            info.path.addAll(Arrays.asList(subCommand.path()));
+            info.descriptions.addAll(Arrays.asList(subCommand.descriptions()));
+        }
+        if (null != type.getAnnotation(Hidden.class)) {
+            info.hidden = true;
+        }
+        for (Method method : type.getMethods()) {
+            Command command = method.getAnnotation(Command.class);
+            if (null == command) {
+                continue;
+            }
+            MethodInfo methodInfo = new MethodInfo();
+            methodInfo.name = "".equals(command.value()) ? method.getName().toLowerCase() : command.value();
+            methodInfo.method = method.getName();
+            Class<?>[] parameters = method.getParameterTypes();
+            methodInfo.parameterTypes = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                methodInfo.parameterTypes[i] = parameters[i].getName();
+            }
+            methodInfo.description = command.description();
+            methodInfo.solo = command.isSolo();
+            methodInfo.hidden = command.isHidden();
+            methodInfo.isDefault = command.isDefault();
+            methodInfo.formatResult = command.formatResult();
+            methodInfo.cacheTtl = command.cacheTtl();
+            methodInfo.synonyms.addAll(Arrays.asList(command.synonyms()));
+            info.methods.add(methodInfo);
+        }
+        return info;
+    }
+
+    /**
+     * Write the snapshot file if classes were scanned since it was loaded
+     *
+     * @throws IOException if the file cannot be written
+     */
+    synchronized void save() throws IOException {
+        if (null == file || !modified) {
+            return;
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeUTF(fingerprint);
+                output.writeInt(types.size());
+                for (Map.Entry<String, TypeInfo> entry : types.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    write(output, entry.getValue());
+                }
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        modified = false;
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        Map<String, TypeInfo> loaded = new HashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || !fingerprint.equals(input.readUTF())) {
+                return;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.put(input.readUTF(), readType(input));
+            }
+        } catch (IOException e) {
+            //unreadable, scan again
+            return;
+        }
+        types.putAll(loaded);
+    }
+
+    private static void write(DataOutputStream output, TypeInfo info) throws IOException {
+        output.writeUTF(info.name);
+        writeStrings(output, info.synonyms);
+        writeNullable(output, info.description);
+        output.writeBoolean(info.sub);
+        output.writeBoolean(info.hidden);
+        writeStrings(output, info.path);
+        writeStrings(output, info.descriptions);
+        output.writeInt(info.methods.size());
+        for (MethodInfo method : info.methods) {
+            output.writeUTF(method.name);
+            output.writeUTF(method.method);
+            writeStrings(output, Arrays.asList(method.parameterTypes));
+            output.writeUTF(method.description);
+            output.writeBoolean(method.solo);
+            output.writeBoolean(method.hidden);
+            output.writeBoolean(method.isDefault);
+            output.writeBoolean(method.formatResult);
+            output.writeLong(method.cacheTtl);
+            writeStrings(output, method.synonyms);
+        }
+    }
+
+    private static TypeInfo readType(DataInputStream input) throws IOException {
+        TypeInfo info = new TypeInfo();
+        info.name = input.readUTF();
+        readStrings(input, info.synonyms);
+        info.description = readNullable(input);
+        info.sub = input.readBoolean();
+        info.hidden = input.readBoolean();
+        readStrings(input, info.path);
+        readStrings(input, info.descriptions);
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            MethodInfo method = new MethodInfo();
+            method.name = input.readUTF();
+            method.method = input.readUTF();
+            List<String> parameterTypes = new ArrayList<>();
+            readStrings(input, parameterTypes);
+            method.parameterTypes = parameterTypes.toArray(new String[0]);
+            method.description = input.readUTF();
+            method.solo = input.readBoolean();
+            method.hidden = input.readBoolean();
+            method.isDefault = input.readBoolean();
+            method.formatResult = input.readBoolean();
+            method.cacheTtl = input.readLong();
+            readStrings(input, method.synonyms);
+            info.methods.add(method);
+        }
+        return info;
+    }
+
+    private static void writeStrings(DataOutputStream output, Collection<String> values) throws IOException {
+        output.writeInt(values.size());
+        for (String value : values) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static void readStrings(DataInputStream input, Collection<String> into) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            into.add(input.readUTF());
+        }
+    }
+
+    private static void writeNullable(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(null != value);
+        if (null != value) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    /**
+     * @return fingerprint of the classpath: the path, size and modification time of each entry, and of the files within
+     * directory entries
+     */
+    static String classpathFingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String classpath = System.getProperty("java.class.path", "");
+            for (String entry : classpath.split(File.pathSeparator)) {
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                Path path = Paths.get(entry);
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+                if (Files.isDirectory(path)) {
+                    List<Path> files = new ArrayList<>();
+                    try (Stream<Path> walk = Files.walk(path)) {
+                        walk.filter(Files::isRegularFile).forEach(files::add);
+                    }
+                    Collections.sort(files);
+                    for (Path child : files) {
+                        update(digest, child);
+                    }
+                } else if (Files.exists(path)) {
+                    update(digest, path);
+                }
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, Path path) throws IOException {
+        digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(Long.toString(Files.size(path)).getBytes(StandardCharsets.UTF_8));
+        digest.update(Long.toString(Files.getLastModifiedTime(path).toMillis()).getBytes(StandardCharsets.UTF_8));
+    }
+}
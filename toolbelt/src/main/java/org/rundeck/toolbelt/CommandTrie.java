@@ -0,0 +1,216 @@
+package org.rundeck.toolbelt;
+
+import java.util.*;
+
+/**
+ * A trie of command names and synonyms, supporting exact lookup, resolution of unambiguous prefixes, and suggestions
+ * of similar names within a bounded edit distance. Lookups are proportional to the length of the key, regardless of the
+ * number of names.
+ *
+ * @param <T> value type
+ */
+class CommandTrie<T> {
+    private final Node<T> root = new Node<>();
+    private boolean sealed;
+
+    private static class Node<T> {
+        char[] keys = new char[0];
+        Node<T>[] children = newArray(0);
+        /**
+         * name and value if a name terminates at this node
+         */
+        String name;
+        T value;
+        /**
+         * whether the name participates in prefix resolution and suggestions
+         */
+        boolean visible;
+        /**
+         * the single visible value within this subtree, or null if there are none or several
+         */
+        T unique;
+
+        Node<T> child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node<T> addChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insert = -(i + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node<T>[] newChildren = newArray(children.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            newChildren[insert] = new Node<>();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insert];
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static <T> Node<T>[] newArray(int size) {
+            return (Node<T>[]) new Node[size];
+        }
+    }
+
+    /**
+     * Add a name, replacing any existing value for the name
+     *
+     * @param name    name
+     * @param value   value
+     * @param visible true if the name can be resolved by prefix and suggested
+     */
+    void put(String name, T value, boolean visible) {
+        Node<T> node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.addChild(name.charAt(i));
+        }
+        node.name = name;
+        node.value = value;
+        node.visible = visible;
+        sealed = false;
+    }
+
+    /**
+     * @param name name
+     *
+     * @return value for the exact name, or null
+     */
+    T get(String name) {
+        Node<T> node = find(name);
+        return null != node ? node.value : null;
+    }
+
+    /**
+     * @param prefix prefix
+     *
+     * @return the value if exactly one visible value has a name starting with the prefix, otherwise null
+     */
+    T unique(String prefix) {
+        seal();
+        Node<T> node = find(prefix);
+        return null != node ? node.unique : null;
+    }
+
+    /**
+     * @param prefix prefix
+     *
+     * @return sorted visible names starting with the prefix
+     */
+    List<String> matching(String prefix) {
+        List<String> result = new ArrayList<>();
+        Node<T> node = find(prefix);
+        if (null != node) {
+            collect(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return sorted visible names
+     */
+    List<String> names() {
+        return matching("");
+    }
+
+    /**
+     * @param name        name
+     * @param maxDistance maximum edit distance
+     *
+     * @return visible names within the edit distance of the name, ordered by distance then name
+     */
+    List<String> suggest(String name, int maxDistance) {
+        int[] first = new int[name.length() + 1];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+        TreeMap<Integer, List<String>> found = new TreeMap<>();
+        for (int i = 0; i < root.keys.length; i++) {
+            suggest(root.children[i], root.keys[i], name, first, maxDistance, found);
+        }
+        List<String> result = new ArrayList<>();
+        found.values().forEach(result::addAll);
+        return result;
+    }
+
+    private void suggest(
+            Node<T> node,
+            char c,
+            String name,
+            int[] previous,
+            int maxDistance,
+            TreeMap<Integer, List<String>> found
+    )
+    {
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int min = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int replace = previous[i - 1] + (name.charAt(i - 1) == c ? 0 : 1);
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), replace);
+            min = Math.min(min, row[i]);
+        }
+        int distance = row[row.length - 1];
+        if (null != node.name && node.visible && distance <= maxDistance) {
+            found.computeIfAbsent(distance, k -> new ArrayList<>()).add(node.name);
+        }
+        if (min > maxDistance) {
+            return;
+        }
+        for (int i = 0; i < node.keys.length; i++) {
+            suggest(node.children[i], node.keys[i], name, row, maxDistance, found);
+        }
+    }
+
+    private Node<T> find(String key) {
+        Node<T> node = root;
+        for (int i = 0; i < key.length() && null != node; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node;
+    }
+
+    private void collect(Node<T> node, List<String> result) {
+        if (null != node.name && node.visible) {
+            result.add(node.name);
+        }
+        for (Node<T> child : node.children) {
+            collect(child, result);
+        }
+    }
+
+    private void seal() {
+        if (!sealed) {
+            computeUnique(root);
+            sealed = true;
+        }
+    }
+
+    /**
+     * @return false if the subtree contains more than one distinct visible value
+     */
+    private boolean computeUnique(Node<T> node) {
+        T unique = null != node.name && node.visible ? node.value : null;
+        boolean single = true;
+        for (Node<T> child : node.children) {
+            if (!computeUnique(child)) {
+                single = false;
+            } else if (null != child.unique) {
+                if (null == unique) {
+                    unique = child.unique;
+                } else if (unique != child.unique) {
+                    single = false;
+                }
+            }
+        }
+        node.unique = single ? unique : null;
+        return single;
+    }
+}
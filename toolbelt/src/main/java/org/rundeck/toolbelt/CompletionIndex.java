@@ -0,0 +1,322 @@
+package org.rundeck.toolbelt;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A compact description of a command tree used to answer shell completion requests: command names, synonyms and
+ * option flags for each command. The index can be written to a text resource at build time and loaded by {@link
+ * #complete(String[], String)} before any commands are introspected, so that completing a word costs only JVM startup
+ * and reading the resource.
+ */
+public class CompletionIndex {
+    /**
+     * Hidden command used by the completion scripts to request completions
+     */
+    public static final String COMPLETE_COMMAND = "__complete";
+    /**
+     * Hidden command which prints a completion script or the serialized index
+     */
+    public static final String COMPLETION_COMMAND = "__completion";
+    /**
+     * Default resource path for a build-time index
+     */
+    public static final String DEFAULT_RESOURCE = "META-INF/toolbelt/completion.idx";
+    private static final String HEADER = "toolbelt-completion 1";
+    private static final Pattern FLAG = Pattern.compile("(?<![\\w-])(--?[A-Za-z0-9][\\w-]*)");
+
+    private final Node root;
+
+    /**
+     * A command in the tree
+     */
+    public static class Node {
+        private final String name;
+        private final boolean hidden;
+        private final Set<String> synonyms = new TreeSet<>();
+        private final Set<String> flags = new TreeSet<>();
+        private final Map<String, Node> children = new TreeMap<>();
+
+        public Node(final String name, final boolean hidden) {
+            this.name = name;
+            this.hidden = hidden;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isHidden() {
+            return hidden;
+        }
+
+        public Set<String> getSynonyms() {
+            return synonyms;
+        }
+
+        public Set<String> getFlags() {
+            return flags;
+        }
+
+        public Map<String, Node> getChildren() {
+            return children;
+        }
+
+        /**
+         * Add option flags found in a help string, e.g. "--name &lt;String&gt;" adds "--name"
+         *
+         * @param help help text, may be null
+         */
+        public void addFlags(final String help) {
+            if (null == help) {
+                return;
+            }
+            Matcher matcher = FLAG.matcher(help);
+            while (matcher.find()) {
+                flags.add(matcher.group(1));
+            }
+        }
+
+        public void add(final Node child) {
+            children.put(child.name, child);
+        }
+
+        Node lookup(String word) {
+            Node node = children.get(word);
+            if (null != node) {
+                return node;
+            }
+            for (Node child : children.values()) {
+                if (child.synonyms.contains(word)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    public CompletionIndex(final Node root) {
+        this.root = root;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Complete the last word of the arguments
+     *
+     * @param words arguments after the tool name, the last being the word to complete (possibly empty)
+     *
+     * @return sorted candidates for the last word
+     */
+    public List<String> complete(List<String> words) {
+        String partial = words.isEmpty() ? "" : words.get(words.size() - 1);
+        Node node = root;
+        for (String word : words.subList(0, Math.max(0, words.size() - 1))) {
+            if (word.startsWith("-")) {
+                continue;
+            }
+            Node child = node.lookup(word);
+            if (null != child) {
+                node = child;
+            }
+        }
+        if (partial.startsWith("-")) {
+            return node.flags.stream().filter(f -> f.startsWith(partial)).collect(Collectors.toList());
+        }
+        return node.children.values()
+                            .stream()
+                            .filter(n -> !n.hidden)
+                            .map(Node::getName)
+                            .filter(n -> n.startsWith(partial))
+                            .collect(Collectors.toList());
+    }
+
+    /**
+     * Write the index in its serialized form
+     *
+     * @param writer writer
+     *
+     * @throws IOException
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        write(writer, root, 0);
+        writer.flush();
+    }
+
+    private void write(Writer writer, Node node, int depth) throws IOException {
+        writer.write(String.join(
+                "\t",
+                Integer.toString(depth),
+                node.name,
+                node.hidden ? "h" : "",
+                String.join(",", node.synonyms),
+                String.join(",", node.flags)
+        ));
+        writer.write('\n');
+        for (Node child : node.children.values()) {
+            write(writer, child, depth + 1);
+        }
+    }
+
+    /**
+     * @return the serialized form
+     */
+    @Override
+    public String toString() {
+        StringWriter writer = new StringWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Read a serialized index
+     *
+     * @param reader reader
+     *
+     * @return index
+     *
+     * @throws IOException if the content is not a completion index
+     */
+    public static CompletionIndex read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        if (!HEADER.equals(lines.readLine())) {
+            throw new IOException("Not a completion index");
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        Node root = null;
+        String line;
+        while (null != (line = lines.readLine())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            //trailing empty fields may be omitted
+            String[] parts = Arrays.copyOf(line.split("\t"), 5);
+            int depth;
+            try {
+                depth = Integer.parseInt(parts[0]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid completion index entry: " + line, e);
+            }
+            if (null == parts[1] || depth > stack.size()) {
+                throw new IOException("Invalid completion index entry: " + line);
+            }
+            Node node = new Node(parts[1], "h".equals(parts[2]));
+            split(parts[3], node.synonyms);
+            split(parts[4], node.flags);
+            while (stack.size() > depth) {
+                stack.pop();
+            }
+            if (stack.isEmpty()) {
+                root = node;
+            } else {
+                stack.peek().add(node);
+            }
+            stack.push(node);
+        }
+        if (null == root) {
+            throw new IOException("Empty completion index");
+        }
+        return new CompletionIndex(root);
+    }
+
+    private static void split(String value, Set<String> into) {
+        if (null != value && !value.isEmpty()) {
+            into.addAll(Arrays.asList(value.split(",")));
+        }
+    }
+
+    /**
+     * Answer a completion request from an index resource, without building the tool. Call this first in the main
+     * method:
+     * <pre>
+     * if (CompletionIndex.complete(args, CompletionIndex.DEFAULT_RESOURCE)) {
+     *     return;
+     * }
+     * </pre>
+     *
+     * @param args     main arguments
+     * @param resource classpath resource of a serialized index
+     *
+     * @return true if the args were a completion request and were answered, false if the tool should run normally
+     */
+    public static boolean complete(String[] args, String resource) {
+        if (args.length < 1 || !COMPLETE_COMMAND.equals(args[0])) {
+            return false;
+        }
+        InputStream stream = CompletionIndex.class.getClassLoader().getResourceAsStream(resource);
+        if (null == stream) {
+            return false;
+        }
+        CompletionIndex index;
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            index = read(reader);
+        } catch (IOException e) {
+            return false;
+        }
+        PrintStream out = System.out;
+        index.complete(Arrays.asList(ToolBelt.tail(args))).forEach(out::println);
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Generate a completion script for a shell
+     *
+     * @param shell bash, zsh or fish
+     * @param tool  name of the tool executable
+     *
+     * @return script text
+     *
+     * @throws IllegalArgumentException if the shell is not supported
+     */
+    public static String script(String shell, String tool) {
+        String function = "_" + tool.replaceAll("\\W", "_") + "_complete";
+        switch (shell) {
+            case "bash":
+                return String.join(
+                        "\n",
+                        function + "() {",
+                        "    local IFS=$'\\n'",
+                        "    COMPREPLY=( $(" + tool + " " + COMPLETE_COMMAND +
+                        " \"${COMP_WORDS[@]:1:COMP_CWORD}\" 2>/dev/null) )",
+                        "}",
+                        "complete -o default -F " + function + " " + tool,
+                        ""
+                );
+            case "zsh":
+                return String.join(
+                        "\n",
+                        "#compdef " + tool,
+                        function + "() {",
+                        "    local -a completions",
+                        "    completions=(\"${(@f)$(" + tool + " " + COMPLETE_COMMAND +
+                        " \"${(@)words[2,CURRENT]}\" 2>/dev/null)}\")",
+                        "    compadd -- $completions",
+                        "}",
+                        "compdef " + function + " " + tool,
+                        ""
+                );
+            case "fish":
+                return String.join(
+                        "\n",
+                        "complete -c " + tool + " -f -a '(" + tool + " " + COMPLETE_COMMAND +
+                        " (commandline -opc)[2..-1] (commandline -ct) 2>/dev/null)'",
+                        ""
+                );
+            default:
+                throw new IllegalArgumentException("Unsupported shell: " + shell + ", expected bash, zsh or fish");
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.rundeck.toolbelt;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes output lines to a file, through a large direct buffer. Each line can be labeled with its channel, so output
+ * and errors remain distinguishable. The file can be rotated when it reaches a size: rotated files are named
+ * "name.N" with an increasing number N, and can be gzip compressed on a background thread. Only the newest rotated
+ * files are kept. A failure to compress or remove rotated files is thrown by the next write, flush or close.
+ */
+public class FileChannelOutput implements CommandOutput, Flushable, Closeable {
+    private final Path path;
+    private final Set<Channel> channels;
+    private final boolean labels;
+    private final long maxSize;
+    private final int maxFiles;
+    private final boolean compress;
+
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private FileChannel file;
+    private long size;
+    private int sequence;
+    private ExecutorService rotations;
+    private volatile Exception rotationFailure;
+    private boolean closed;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Path path;
+        private Set<Channel> channels = EnumSet.of(Channel.INFO, Channel.OUTPUT, Channel.WARNING, Channel.ERROR);
+        private boolean labels = true;
+        private int bufferSize = 256 * 1024;
+        private long maxSize;
+        private int maxFiles = 10;
+        private boolean compress;
+
+        /**
+         * @param path file to write, appended to if it exists
+         */
+        public Builder path(final Path path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param channels channels to record, default info, output, warning and error
+         */
+        public Builder channels(final Channel... channels) {
+            this.channels = EnumSet.noneOf(Channel.class);
+            this.channels.addAll(Arrays.asList(channels));
+            return this;
+        }
+
+        /**
+         * @param labels true to prefix each line with its channel, e.g. "WARNING: text" (default true)
+         */
+        public Builder labels(final boolean labels) {
+            this.labels = labels;
+            return this;
+        }
+
+        /**
+         * @param bufferSize size of the write buffer in bytes (default 256KiB)
+         */
+        public Builder bufferSize(final int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param maxSize rotate the file when it would exceed this size in bytes, 0 to disable rotation (default)
+         */
+        public Builder maxSize(final long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param maxFiles number of rotated files to keep (default 10)
+         */
+        public Builder maxFiles(final int maxFiles) {
+            this.maxFiles = maxFiles;
+            return this;
+        }
+
+        /**
+         * @param compress true to gzip rotated files
+         */
+        public Builder compress(final boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        /**
+         * @return new output, with the file opened
+         *
+         * @throws IOException if the file cannot be opened
+         */
+        public FileChannelOutput build() throws IOException {
+            if (null == path) {
+                throw new IllegalStateException("path is required");
+            }
+            return new FileChannelOutput(this);
+        }
+    }
+
+    private FileChannelOutput(Builder builder) throws IOException {
+        this.path = builder.path.toAbsolutePath();
+        this.channels = builder.channels;
+        this.labels = builder.labels;
+        this.maxSize = builder.maxSize;
+        this.maxFiles = builder.maxFiles;
+        this.compress = builder.compress;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(builder.bufferSize, 1024));
+        if (maxSize > 0) {
+            for (Integer existing : rotated().keySet()) {
+                sequence = Math.max(sequence, existing);
+            }
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        file = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND
+        );
+        size = file.size();
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return channels.contains(channel);
+    }
+
+    @Override
+    public void info(final Object output) {
+        write(Channel.INFO, output);
+    }
+
+    @Override
+    public void output(final Object output) {
+        write(Channel.OUTPUT, output);
+    }
+
+    @Override
+    public void error(final Object error) {
+        write(Channel.ERROR, error);
+    }
+
+    @Override
+    public void warning(final Object error) {
+        write(Channel.WARNING, error);
+    }
+
+    @Override
+    public void debug(final Object output) {
+        write(Channel.DEBUG, output);
+    }
+
+    @Override
+    public void trace(final Object output) {
+        write(Channel.TRACE, output);
+    }
+
+    private synchronized void write(Channel channel, Object message) {
+        if (!channels.contains(channel)) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("Output is closed: " + path);
+        }
+        String line = labels ? channel + ": " + message + "\n" : message + "\n";
+        try {
+            if (maxSize > 0 && size + buffer.position() > 0 && size + buffer.position() + line.length() > maxSize) {
+                //length in chars is the minimum encoded size
+                rotate();
+            }
+            encoder.reset();
+            CharBuffer chars = CharBuffer.wrap(line);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+            checkRotations();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            size += file.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Close the current file, rename it with the next sequence number and start a new file. Compression and removal
+     * of old files happens on a background thread
+     */
+    private void rotate() throws IOException {
+        drain();
+        file.close();
+        Path target = path.resolveSibling(path.getFileName() + "." + (++sequence));
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        if (null == rotations) {
+            rotations = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "toolbelt-rotate");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        rotations.execute(() -> {
+            try {
+                if (compress) {
+                    gzip(target);
+                }
+                prune();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        });
+    }
+
+    /**
+     * Record the first failure of background rotation, only called by the rotation thread
+     */
+    private void fail(Exception e) {
+        if (null == rotationFailure) {
+            rotationFailure = e;
+        }
+    }
+
+    /**
+     * @throws IOException if background rotation failed since the last check
+     */
+    private void checkRotations() throws IOException {
+        Exception e = rotationFailure;
+        if (null != e) {
+            rotationFailure = null;
+            throw new IOException("Failed to compress or remove rotated files of " + path, e);
+        }
+    }
+
+    private static void gzip(Path source) throws IOException {
+        if (!Files.exists(source)) {
+            //already removed as one of the oldest files
+            return;
+        }
+        Path gz = source.resolveSibling(source.getFileName() + ".gz");
+        Path temp = source.resolveSibling(source.getFileName() + ".gz.tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                Files.copy(source, out);
+            }
+            Files.move(temp, gz, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void prune() throws IOException {
+        SortedMap<Integer, List<Path>> files = rotated();
+        while (files.size() > maxFiles) {
+            for (Path old : files.remove(files.firstKey())) {
+                Files.deleteIfExists(old);
+            }
+        }
+    }
+
+    /**
+     * @return rotated files by sequence number
+     */
+    private SortedMap<Integer, List<Path>> rotated() throws IOException {
+        Pattern pattern = Pattern.compile(Pattern.quote(path.getFileName().toString()) + "\\.(\\d+)(\\.gz)?");
+        SortedMap<Integer, List<Path>> found = new TreeMap<>();
+        Path dir = path.getParent();
+        if (!Files.isDirectory(dir)) {
+            return found;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    found.computeIfAbsent(Integer.parseInt(matcher.group(1)), k -> new ArrayList<>()).add(file);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Write buffered output to the file
+     */
+    @Override
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            drain();
+            checkRotations();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flush and close the file, and wait for background compression to finish
+     *
+     * @throws IOException if the file cannot be written, or background rotation failed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            drain();
+            file.close();
+        } finally {
+            closed = true;
+            if (null != rotations) {
+                rotations.shutdown();
+                try {
+                    rotations.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        checkRotations();
+    }
+}
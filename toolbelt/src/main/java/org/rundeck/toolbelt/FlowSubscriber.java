@@ -0,0 +1,197 @@
+package org.rundeck.toolbelt;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Consumes a {@code java.util.concurrent.Flow.Publisher} as a stream on the calling thread, requesting more items only
+ * as they are consumed, so at most {@link #PREFETCH} items are held. The Flow API is used reflectively, so it is only
+ * required when a publisher is returned, on Java 9 or later.
+ */
+final class FlowSubscriber implements InvocationHandler, Iterator<Object> {
+    static final int PREFETCH = 32;
+    private static final Class<?> PUBLISHER = load("java.util.concurrent.Flow$Publisher");
+    private static final Class<?> SUBSCRIBER = load("java.util.concurrent.Flow$Subscriber");
+    private static final Class<?> SUBSCRIPTION = load("java.util.concurrent.Flow$Subscription");
+    private static final Object COMPLETE = new Object();
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(PREFETCH + 1);
+    private volatile Object subscription;
+    private Object next;
+    private boolean complete;
+    private int consumed;
+
+    /**
+     * Thrown by the stream when the publisher signals an error, or the consuming thread is interrupted
+     */
+    static final class Failed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failed(final Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private static final class Failure {
+        final Throwable error;
+
+        Failure(final Throwable error) {
+            this.error = error;
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param value object
+     *
+     * @return true if the object is a Flow.Publisher
+     */
+    static boolean isPublisher(Object value) {
+        return null != PUBLISHER && PUBLISHER.isInstance(value);
+    }
+
+    /**
+     * Subscribe to the publisher, and return its items as a stream which blocks until each item is published. Closing
+     * the stream before the publisher completes cancels the subscription
+     *
+     * @param publisher publisher
+     *
+     * @return stream of items, which throws {@link Failed} with the error signalled by the publisher
+     *
+     * @throws Throwable if subscribing fails
+     */
+    static Stream<Object> stream(Object publisher) throws Throwable {
+        FlowSubscriber handler = new FlowSubscriber();
+        Object subscriber = Proxy.newProxyInstance(
+                FlowSubscriber.class.getClassLoader(),
+                new Class<?>[]{SUBSCRIBER},
+                handler
+        );
+        invoke(PUBLISHER.getMethod("subscribe", SUBSCRIBER), publisher, subscriber);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(handler, Spliterator.ORDERED), false)
+                            .onClose(handler::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null != next) {
+            return true;
+        }
+        if (complete) {
+            return false;
+        }
+        Object item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new Failed(e);
+        }
+        if (item == COMPLETE) {
+            complete = true;
+            return false;
+        } else if (item instanceof Failure) {
+            complete = true;
+            throw new Failed(((Failure) item).error);
+        }
+        next = item;
+        return true;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = next;
+        next = null;
+        if (++consumed == PREFETCH / 2) {
+            consumed = 0;
+            try {
+                request(PREFETCH / 2);
+            } catch (Throwable e) {
+                close();
+                throw new Failed(e);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Cancel the subscription unless the publisher has completed
+     */
+    private void close() {
+        if (!complete) {
+            complete = true;
+            cancel();
+        }
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "onSubscribe":
+                subscription = args[0];
+                request(PREFETCH);
+                return null;
+            case "onNext":
+                queue.add(args[0]);
+                return null;
+            case "onError":
+                queue.add(new Failure((Throwable) args[0]));
+                return null;
+            case "onComplete":
+                queue.add(COMPLETE);
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "FlowSubscriber@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private void request(long count) throws Throwable {
+        invoke(SUBSCRIPTION.getMethod("request", long.class), subscription, count);
+    }
+
+    private void cancel() {
+        Object current = subscription;
+        if (null != current) {
+            try {
+                invoke(SUBSCRIPTION.getMethod("cancel"), current);
+            } catch (Throwable ignored) {
+                //already failing
+            }
+        }
+    }
+
+    private static void invoke(Method method, Object target, Object... args) throws Throwable {
+        try {
+            method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
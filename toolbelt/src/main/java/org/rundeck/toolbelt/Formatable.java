@@ -1,10 +1,19 @@
 package org.rundeck.toolbelt;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by greg on 11/17/16.
+ * <p>
+ * Data to be formatted as a list or map. Large results can implement {@link #asIterator()}, {@link #asStream()} or
+ * {@link #asEntryIterator()} instead of {@link #asList()} or {@link #asMap()}, so that a formatter which supports it
+ * can write each item as it is produced, without holding all of them in memory.
  */
 public interface Formatable {
     default List<?> asList() {
@@ -14,4 +23,31 @@ public interface Formatable {
     default Map<?, ?> asMap() {
         return null;
     }
+
+    /**
+     * @return iterator of list items, default uses {@link #asList()}
+     */
+    default Iterator<?> asIterator() {
+        List<?> list = asList();
+        return null != list ? list.iterator() : null;
+    }
+
+    /**
+     * @return stream of list items, default uses {@link #asIterator()}. The stream is closed after it is formatted
+     */
+    default Stream<?> asStream() {
+        Iterator<?> iterator = asIterator();
+        if (null == iterator) {
+            return null;
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    /**
+     * @return iterator of map entries, default uses {@link #asMap()}
+     */
+    default Iterator<? extends Map.Entry<?, ?>> asEntryIterator() {
+        Map<?, ?> map = asMap();
+        return null != map ? map.entrySet().iterator() : null;
+    }
 }
@@ -1,11 +1,12 @@
 package org.rundeck.toolbelt;
 
 /**
- * Can format output objects
+ * Can format output objects. Objects are only formatted if the delegate has the channel enabled. Formatters may
+ * deliver large data in several chunks, each is passed to the delegate as it is formatted
  */
 public class FormattedOutput implements CommandOutput {
     CommandOutput delegate;
-    OutputFormatter formatter;
+    volatile OutputFormatter formatter;
 
     public FormattedOutput(
             final CommandOutput output,
@@ -16,25 +17,59 @@ public class FormattedOutput implements CommandOutput {
         this.formatter = formatter;
     }
 
+    public OutputFormatter getFormatter() {
+        return formatter;
+    }
+
+    public void setFormatter(final OutputFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return delegate.isEnabled(channel);
+    }
+
     @Override
     public void info(final Object output) {
-        delegate.info(formatter.format(output));
+        if (delegate.isEnabled(Channel.INFO)) {
+            formatter.format(output, delegate::info);
+        }
     }
 
     @Override
     public void output(final Object output)  {
-        delegate.output(formatter.format(output));
-
+        if (delegate.isEnabled(Channel.OUTPUT)) {
+            formatter.format(output, delegate::output);
+        }
     }
 
     @Override
     public void error(final Object error)  {
-        delegate.error(formatter.format(error));
+        if (delegate.isEnabled(Channel.ERROR)) {
+            formatter.format(error, delegate::error);
+        }
     }
 
     @Override
     public void warning(final Object error)  {
-        delegate.warning(formatter.format(error));
+        if (delegate.isEnabled(Channel.WARNING)) {
+            formatter.format(error, delegate::warning);
+        }
+    }
+
+    @Override
+    public void debug(final Object output) {
+        if (delegate.isEnabled(Channel.DEBUG)) {
+            formatter.format(output, delegate::debug);
+        }
+    }
+
+    @Override
+    public void trace(final Object output) {
+        if (delegate.isEnabled(Channel.TRACE)) {
+            formatter.format(output, delegate::trace);
+        }
     }
 
 }
@@ -0,0 +1,258 @@
+package org.rundeck.toolbelt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Writes output lines to a file through a memory mapped window, for very large output such as data exports.
+ * Characters are encoded directly into the mapped memory, and the window is moved forward as it fills, growing the
+ * file. The file is truncated to the written size when closed. The file is replaced if it exists.
+ * <p>
+ * Each window is unmapped when the next one is mapped, and the last one before the file is truncated. The JDK has no
+ * public API to unmap a buffer, so the JDK internal cleaner is used where it is accessible. On runtimes where it is not,
+ * mappings are only released when the buffers are garbage collected, which can exhaust address space for very large
+ * files, and on Windows truncating the file fails while a mapping is live.
+ * </p>
+ */
+public class MappedFileOutput implements CommandOutput, Closeable {
+    private static final Consumer<MappedByteBuffer> UNMAPPER = unmapper();
+
+    private final Path path;
+    private final Set<Channel> channels;
+    private final int windowSize;
+    private final FileChannel file;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean closed;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Path path;
+        private Set<Channel> channels = EnumSet.of(Channel.OUTPUT);
+        private int windowSize = 64 * 1024 * 1024;
+
+        /**
+         * @param path file to write
+         */
+        public Builder path(final Path path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param channels channels to write, default output only
+         */
+        public Builder channels(final Channel... channels) {
+            this.channels = EnumSet.noneOf(Channel.class);
+            this.channels.addAll(Arrays.asList(channels));
+            return this;
+        }
+
+        /**
+         * @param windowSize size of the mapped window in bytes (default 64MiB)
+         */
+        public Builder windowSize(final int windowSize) {
+            if (windowSize < 16) {
+                throw new IllegalArgumentException("windowSize must be at least 16: " + windowSize);
+            }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @return new output, with the file opened
+         *
+         * @throws IOException if the file cannot be opened
+         */
+        public MappedFileOutput build() throws IOException {
+            if (null == path) {
+                throw new IllegalStateException("path is required");
+            }
+            return new MappedFileOutput(this);
+        }
+    }
+
+    private MappedFileOutput(Builder builder) throws IOException {
+        this.path = builder.path;
+        this.channels = builder.channels;
+        this.windowSize = builder.windowSize;
+        this.file = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        );
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        MappedByteBuffer previous = window;
+        window = file.map(FileChannel.MapMode.READ_WRITE, start, windowSize);
+        windowStart = start;
+        if (null != previous) {
+            unmap(previous);
+        }
+    }
+
+    /**
+     * Release the mapping now rather than when the buffer is collected, the buffer must not be used afterwards
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (null == UNMAPPER) {
+            return;
+        }
+        try {
+            UNMAPPER.accept(buffer);
+        } catch (RuntimeException e) {
+            //released when collected
+        }
+    }
+
+    /**
+     * @return function to unmap a buffer: Unsafe.invokeCleaner on Java 9+, the buffer's cleaner on Java 8, or null if
+     * neither is accessible
+     */
+    private static Consumer<MappedByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //not Java 9+
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> invoke(clean, invoke(cleaner, buffer));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    public synchronized long getSize() {
+        return windowStart + (null != window ? window.position() : 0);
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return channels.contains(channel);
+    }
+
+    @Override
+    public void info(final Object output) {
+        write(Channel.INFO, output);
+    }
+
+    @Override
+    public void output(final Object output) {
+        write(Channel.OUTPUT, output);
+    }
+
+    @Override
+    public void error(final Object error) {
+        write(Channel.ERROR, error);
+    }
+
+    @Override
+    public void warning(final Object error) {
+        write(Channel.WARNING, error);
+    }
+
+    @Override
+    public void debug(final Object output) {
+        write(Channel.DEBUG, output);
+    }
+
+    @Override
+    public void trace(final Object output) {
+        write(Channel.TRACE, output);
+    }
+
+    private synchronized void write(Channel channel, Object message) {
+        if (!channels.contains(channel)) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("Output is closed: " + path);
+        }
+        try {
+            encoder.reset();
+            CharBuffer chars = CharBuffer.wrap(message + "\n");
+            while (true) {
+                CoderResult result = encoder.encode(chars, window, true);
+                if (result.isOverflow()) {
+                    map(windowStart + window.position());
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            while (encoder.flush(window).isOverflow()) {
+                map(windowStart + window.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Unmap the window, truncate the file to the written size, and close it
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long size = getSize();
+        MappedByteBuffer last = window;
+        window = null;
+        unmap(last);
+        try {
+            file.truncate(size);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package org.rundeck.toolbelt;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Created by greg on 6/13/16.
@@ -30,10 +34,61 @@ public class NiceFormatter implements OutputFormatter {
             return formatMap((Map) o, 0);
         } else if (o instanceof Collection) {
             return formatCollection((Collection) o, 0);
+        } else if (o instanceof Formatable) {
+            Formatable value = (Formatable) o;
+            if (null != value.asList()) {
+                return formatCollection(value.asList(), 0);
+            } else if (null != value.asMap()) {
+                return formatMap(value.asMap(), 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            if (formatStreamed(value, chunk -> sb.append(chunk).append(NL))) {
+                return sb.toString();
+            }
         }
         return base.format(o);
     }
 
+    /**
+     * Streamed items and entries of a {@link Formatable} are written as one chunk each
+     */
+    @Override
+    public void format(final Object o, final Consumer<String> out) {
+        if (o instanceof Formatable) {
+            Formatable value = (Formatable) o;
+            if (null == value.asList() && null == value.asMap() && formatStreamed(value, out)) {
+                return;
+            }
+        }
+        out.accept(format(o));
+    }
+
+    private boolean formatStreamed(final Formatable value, final Consumer<String> out) {
+        try (Stream<?> stream = value.asStream()) {
+            if (null != stream) {
+                stream.forEachOrdered(item -> out.accept(chomp(formatCollection(Collections.singletonList(item), 0))));
+                return true;
+            }
+        }
+        Iterator<? extends Map.Entry<?, ?>> entries = value.asEntryIterator();
+        if (null != entries) {
+            entries.forEachRemaining(entry -> out.accept(chomp(formatMap(
+                    Collections.singletonMap(entry.getKey(), entry.getValue()),
+                    0
+            ))));
+            return true;
+        }
+        return false;
+    }
+
+    private static String chomp(String text) {
+        String result = text;
+        while (result.endsWith(NL)) {
+            result = result.substring(0, result.length() - NL.length());
+        }
+        return result;
+    }
+
     private String formatMap(final Map o, final int level) {
         StringBuilder sb = new StringBuilder();
         for (Object key : o.keySet()) {
@@ -122,4 +177,11 @@ public class NiceFormatter implements OutputFormatter {
         this.indentation = indentation;
     }
 
+    @Override
+    public String getCacheKey() {
+        return getClass().getName()
+               + "[" + collectionIndicator + "|" + keyValueSeparator + "|" + indentation + "]("
+               + (null != base ? base.getCacheKey() : "") + ")";
+    }
+
 }
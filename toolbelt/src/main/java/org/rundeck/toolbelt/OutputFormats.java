@@ -0,0 +1,122 @@
+package org.rundeck.toolbelt;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Registry of output formats by name, from the {@link OutputFormatterProvider} services available to a class loader.
+ * The "nice" format is always available and uses only the base formatter. A formatter is created only when its format
+ * is selected. Text, such as messages and help, is left to the base formatter, so only data uses the format.
+ */
+public class OutputFormats {
+    public static final String NICE = "nice";
+
+    private final ClassLoader loader;
+    private volatile Map<String, OutputFormatterProvider> providers;
+
+    private OutputFormats(final ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @return formats available to the context class loader
+     */
+    public static OutputFormats load() {
+        return load(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * @param loader class loader
+     *
+     * @return formats available to the class loader
+     */
+    public static OutputFormats load(ClassLoader loader) {
+        return new OutputFormats(loader);
+    }
+
+    private Map<String, OutputFormatterProvider> providers() {
+        if (null == providers) {
+            synchronized (this) {
+                if (null == providers) {
+                    Map<String, OutputFormatterProvider> found = new TreeMap<>();
+                    for (OutputFormatterProvider provider : ServiceLoader.load(OutputFormatterProvider.class, loader)) {
+                        found.putIfAbsent(provider.getName(), provider);
+                    }
+                    providers = found;
+                }
+            }
+        }
+        return providers;
+    }
+
+    /**
+     * @return available format names
+     */
+    public Set<String> getNames() {
+        TreeSet<String> names = new TreeSet<>(providers().keySet());
+        names.add(NICE);
+        return names;
+    }
+
+    /**
+     * @param name format name
+     *
+     * @return true if the format is available
+     */
+    public boolean has(String name) {
+        return NICE.equals(name) || providers().containsKey(name);
+    }
+
+    /**
+     * @param name format name
+     * @param base base formatter
+     *
+     * @return formatter for the format with the given base, or null if it is not available
+     */
+    public OutputFormatter create(String name, OutputFormatter base) {
+        if (NICE.equals(name)) {
+            return base;
+        }
+        OutputFormatterProvider provider = providers().get(name);
+        return null != provider ? new DataFormatter(name, provider.create().withBase(base), base) : null;
+    }
+
+    /**
+     * Uses the format for data, and the base formatter for text
+     */
+    private static final class DataFormatter implements OutputFormatter {
+        private final String name;
+        private final OutputFormatter format;
+        private final OutputFormatter base;
+
+        DataFormatter(final String name, final OutputFormatter format, final OutputFormatter base) {
+            this.name = name;
+            this.format = format;
+            this.base = base;
+        }
+
+        private OutputFormatter select(Object o) {
+            return o instanceof CharSequence || o instanceof ANSIColorOutput.ColorString ? base : format;
+        }
+
+        @Override
+        public String format(final Object o) {
+            return select(o).format(o);
+        }
+
+        @Override
+        public void format(final Object o, final Consumer<String> out) {
+            select(o).format(o, out);
+        }
+
+        @Override
+        public OutputFormatter withBase(final OutputFormatter base) {
+            return new DataFormatter(name, format.withBase(base), base);
+        }
+
+        @Override
+        public String getCacheKey() {
+            return name + ":" + format.getCacheKey() + "(" + base.getCacheKey() + ")";
+        }
+    }
+}
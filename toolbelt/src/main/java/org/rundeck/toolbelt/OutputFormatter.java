@@ -1,10 +1,31 @@
 package org.rundeck.toolbelt;
 
+import java.util.function.Consumer;
+
 /**
  * Format object output
  */
 public interface OutputFormatter {
     String format(Object o);
 
+    /**
+     * Format the object as one or more chunks of text, each is a line or group of lines. Formatters can override this
+     * to write large data incrementally, the default passes the result of {@link #format(Object)} as a single chunk.
+     *
+     * @param o   object
+     * @param out receives formatted chunks in order
+     */
+    default void format(Object o, Consumer<String> out) {
+        out.accept(format(o));
+    }
+
     OutputFormatter withBase(OutputFormatter base);
+
+    /**
+     * @return identity of the formatter and its configuration, formatters with the same key produce the same text for
+     * the same objects. Used to key cached command output, the default is the class name
+     */
+    default String getCacheKey() {
+        return getClass().getName();
+    }
 }
@@ -0,0 +1,17 @@
+package org.rundeck.toolbelt;
+
+/**
+ * Provides a named output format, registered as a {@link java.util.ServiceLoader} service. Providers are loaded to
+ * list the format names, so a provider should only load its formatter classes in {@link #create()}.
+ */
+public interface OutputFormatterProvider {
+    /**
+     * @return format name, e.g. "json"
+     */
+    String getName();
+
+    /**
+     * @return new formatter, which will be given the base formatter with {@link OutputFormatter#withBase(OutputFormatter)}
+     */
+    OutputFormatter create();
+}
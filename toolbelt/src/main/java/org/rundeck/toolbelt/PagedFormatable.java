@@ -0,0 +1,100 @@
+package org.rundeck.toolbelt;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * List data fetched one page at a time, e.g. from a paged remote API. Pages are fetched as the formatter reaches
+ * them, so output starts after the first page and only one page is held in memory.
+ *
+ * @param <T> item type
+ */
+public class PagedFormatable<T> implements Formatable {
+    private final PageSource<T> source;
+    private final int pageSize;
+
+    /**
+     * Fetches a page of items
+     *
+     * @param <T> item type
+     */
+    @FunctionalInterface
+    public interface PageSource<T> {
+        /**
+         * @param page page number, starting at 0
+         *
+         * @return items in the page, empty or null if there are no more pages
+         *
+         * @throws Exception if the page cannot be fetched
+         */
+        List<T> fetch(int page) throws Exception;
+    }
+
+    /**
+     * @param source page source, fetched until it returns an empty page
+     */
+    public static <T> PagedFormatable<T> of(PageSource<T> source) {
+        return new PagedFormatable<>(source, 0);
+    }
+
+    /**
+     * @param source   page source
+     * @param pageSize expected page size, a smaller page is taken as the last one, 0 to fetch until an empty page
+     */
+    public static <T> PagedFormatable<T> of(PageSource<T> source, int pageSize) {
+        return new PagedFormatable<>(source, pageSize);
+    }
+
+    private PagedFormatable(final PageSource<T> source, final int pageSize) {
+        this.source = source;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public Iterator<T> asIterator() {
+        return new Pages();
+    }
+
+    private class Pages implements Iterator<T> {
+        private int page;
+        private boolean last;
+        private Iterator<T> current = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (last) {
+                    return false;
+                }
+                List<T> items = fetch(page++);
+                if (null == items || items.isEmpty()) {
+                    last = true;
+                    return false;
+                }
+                last = pageSize > 0 && items.size() < pageSize;
+                current = items.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    private List<T> fetch(int page) {
+        try {
+            return source.fetch(page);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
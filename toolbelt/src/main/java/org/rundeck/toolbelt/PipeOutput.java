@@ -0,0 +1,73 @@
+package org.rundeck.toolbelt;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Collects the output objects of a command in a pipeline, to be passed to the next command. Collections and {@link
+ * Formatable} lists are collected as their items. Other channels are sent to the delegate.
+ */
+class PipeOutput implements CommandOutput {
+    private final CommandOutput delegate;
+    private final List<Object> items = new ArrayList<>();
+
+    PipeOutput(final CommandOutput delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the collected objects
+     */
+    synchronized List<Object> getItems() {
+        return new ArrayList<>(items);
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return channel == Channel.OUTPUT || delegate.isEnabled(channel);
+    }
+
+    @Override
+    public synchronized void output(final Object output) {
+        if (output instanceof Collection) {
+            items.addAll((Collection<?>) output);
+            return;
+        }
+        if (output instanceof Formatable) {
+            try (Stream<?> stream = ((Formatable) output).asStream()) {
+                if (null != stream) {
+                    stream.forEachOrdered(items::add);
+                    return;
+                }
+            }
+        }
+        if (null != output) {
+            items.add(output);
+        }
+    }
+
+    @Override
+    public void info(final Object output) {
+        delegate.info(output);
+    }
+
+    @Override
+    public void error(final Object error) {
+        delegate.error(error);
+    }
+
+    @Override
+    public void warning(final Object error) {
+        delegate.warning(error);
+    }
+
+    @Override
+    public void debug(final Object output) {
+        delegate.debug(output);
+    }
+
+    @Override
+    public void trace(final Object output) {
+        delegate.trace(output);
+    }
+}
@@ -0,0 +1,18 @@
+package org.rundeck.toolbelt;
+
+/**
+ * A tool which can run commands as a pipeline, tools built by {@link ToolBelt#buckle()} implement this
+ */
+public interface Pipeline {
+    /**
+     * Run commands as a pipeline: the output objects of each command are passed to the next command as a {@link
+     * java.util.stream.Stream} or {@link Iterable} parameter, and the output of the last command is formatted
+     *
+     * @param stages arguments for each command
+     *
+     * @return true if all commands succeeded
+     *
+     * @throws CommandRunFailure
+     */
+    boolean pipe(String[]... stages) throws CommandRunFailure;
+}
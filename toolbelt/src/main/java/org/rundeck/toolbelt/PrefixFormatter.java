@@ -1,5 +1,6 @@
 package org.rundeck.toolbelt;
 
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import static org.rundeck.toolbelt.NiceFormatter.NL;
@@ -27,6 +28,15 @@ public class PrefixFormatter implements OutputFormatter {
         return addPrefix(prefix, null != base ? base.format(o) : o.toString());
     }
 
+    @Override
+    public void format(final Object o, final Consumer<String> out) {
+        if (null == base) {
+            out.accept(format(o));
+            return;
+        }
+        base.format(o, chunk -> out.accept(addPrefix(prefix, chunk)));
+    }
+
     private String addPrefix(final String prefix, final String text) {
         StringBuilder sb = new StringBuilder();
         indent(text, sb, true, prefix);
@@ -24,6 +24,21 @@ public class SystemOutput implements CommandOutput {
         System.err.println(error);
     }
 
+    @Override
+    public void debug(final Object output) {
+        System.err.println(output);
+    }
+
+    @Override
+    public void trace(final Object output) {
+        System.err.println(output);
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        return true;
+    }
+
     public void outPrint(final Object out) {
         System.out.print(out);
     }
@@ -0,0 +1,103 @@
+package org.rundeck.toolbelt;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends output to several outputs, skipping outputs which do not have the channel enabled
+ */
+public class TeeOutput implements CommandOutput, Flushable {
+    private final List<CommandOutput> outputs;
+
+    public TeeOutput(final CommandOutput... outputs) {
+        this.outputs = new ArrayList<>(Arrays.asList(outputs));
+    }
+
+    public List<CommandOutput> getOutputs() {
+        return outputs;
+    }
+
+    @Override
+    public boolean isEnabled(final Channel channel) {
+        for (CommandOutput output : outputs) {
+            if (output.isEnabled(channel)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void info(final Object output) {
+        for (CommandOutput out : outputs) {
+            if (out.isEnabled(Channel.INFO)) {
+                out.info(output);
+            }
+        }
+    }
+
+    @Override
+    public void output(final Object output) {
+        for (CommandOutput out : outputs) {
+            if (out.isEnabled(Channel.OUTPUT)) {
+                out.output(output);
+            }
+        }
+    }
+
+    @Override
+    public void error(final Object error) {
+        for (CommandOutput out : outputs) {
+            if (out.isEnabled(Channel.ERROR)) {
+                out.error(error);
+            }
+        }
+    }
+
+    @Override
+    public void warning(final Object error) {
+        for (CommandOutput out : outputs) {
+            if (out.isEnabled(Channel.WARNING)) {
+                out.warning(error);
+            }
+        }
+    }
+
+    @Override
+    public void debug(final Object output) {
+        for (CommandOutput out : outputs) {
+            if (out.isEnabled(Channel.DEBUG)) {
+                out.debug(output);
+            }
+        }
+    }
+
+    @Override
+    public void trace(final Object output) {
+        for (CommandOutput out : outputs) {
+            if (out.isEnabled(Channel.TRACE)) {
+                out.trace(output);
+            }
+        }
+    }
+
+    /**
+     * Flush any outputs which are {@link Flushable}
+     */
+    @Override
+    public void flush() {
+        for (CommandOutput output : outputs) {
+            if (output instanceof Flushable) {
+                try {
+                    ((Flushable) output).flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -5,7 +5,7 @@ import java.util.Set;
 /**
  * a CLI tool can run main arguments, or subcommand arguments
  */
-public interface Tool {
+public interface Tool extends AutoCloseable {
     /**
      * Run main arguments
      *
@@ -23,4 +23,11 @@ public interface Tool {
     Set<String> listCommands();
 
     void getHelp();
+
+    /**
+     * Release resources held by the tool, such as the writer thread of asynchronous output. The default does nothing
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -4,9 +4,14 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -15,6 +20,11 @@ import java.util.stream.Stream;
  * Construct subcommands
  */
 public class ToolBelt {
+    public static final String FORMAT_OPTION = "--format";
+    /**
+     * Separates the commands of a pipeline, if enabled with {@link #pipelines(boolean)}
+     */
+    public static final String PIPE_SEPARATOR = "++";
     private CommandSet commands;
     private CommandInput inputParser;
     private Set<String> helpCommands;
@@ -24,7 +34,16 @@ public class ToolBelt {
     private OutputFormatter formatter;
     private boolean ansiColor;
     private ANSIColorOutput.Builder ansiBuilder = ANSIColorOutput.builder().sink(new SystemOutput());
+    private boolean asyncOutput;
+    private List<CommandOutput> tees = new ArrayList<>();
+    private AsyncCommandOutput.Builder asyncBuilder = AsyncCommandOutput.builder();
     private Map<Class<? extends Throwable>, ErrorHandler> errorHandlers = new HashMap<>();
+    private boolean prefixMatching;
+    private boolean pipelines;
+    private boolean completion;
+    private OutputFormats formats;
+    private CommandSnapshot snapshot = new CommandSnapshot(null, null);
+    private ForkJoinPool introspectionPool;
 
     /**
      * Handle a throwable type
@@ -126,7 +145,7 @@ public class ToolBelt {
      * @return this
      */
     public ToolBelt add(final Object... instance) {
-        Arrays.asList(instance).forEach(this::introspect);
+        scan(Arrays.asList(instance)).forEach(this::introspect);
         return this;
     }
 
@@ -190,6 +209,41 @@ public class ToolBelt {
         return ansiColorOutput(true);
     }
 
+    /**
+     * Set whether output is delivered on a separate writer thread, see {@link AsyncCommandOutput}. Output is flushed
+     * when {@link Tool#runMain(String[], boolean)} completes, and the writer thread is stopped by {@link Tool#close()}.
+     *
+     * @param enabled true/false
+     *
+     * @return this builder
+     */
+    public ToolBelt asyncOutput(boolean enabled) {
+        asyncOutput = enabled;
+        return this;
+    }
+
+    /**
+     * Configure asynchronous output, the delegate is set when the tool is built
+     *
+     * @return builder
+     */
+    public AsyncCommandOutput.Builder async() {
+        return asyncBuilder;
+    }
+
+    /**
+     * Also send output to another output, such as a {@link FileChannelOutput} to record it. The output receives the
+     * formatted messages for the channels it has enabled, independently of the channel configuration.
+     *
+     * @param output output
+     *
+     * @return this builder
+     */
+    public ToolBelt tee(CommandOutput output) {
+        tees.add(output);
+        return this;
+    }
+
     /**
      * Use system out/err for command output
      *
@@ -251,36 +305,111 @@ public class ToolBelt {
      * @return this
      */
     public ToolBelt bannerResource(String resource, Map<String, String> replacements) {
-        this.commands.banner = () -> {
-            InputStream resourceAsStream = this.getClass().getClassLoader().getResourceAsStream(resource);
-            if (null != resourceAsStream) {
-                try {
-                    String result;
-                    try (BufferedReader is = new BufferedReader(new InputStreamReader(resourceAsStream))) {
-                        result = is.lines().collect(Collectors.joining("\n"));
-                    }
-                    if (replacements != null && !replacements.isEmpty()) {
-                        for (String s : replacements.keySet()) {
-                            String val = replacements.get(s);
-                            result = result.replaceAll(s, Matcher.quoteReplacement(val));
-                        }
-                    }
-                    return result;
-                } catch (IOException e) {
-
+        Map<Pattern, String> patterns = new LinkedHashMap<>();
+        if (replacements != null) {
+            replacements.forEach((regex, val) -> patterns.put(Pattern.compile(regex), Matcher.quoteReplacement(val)));
+        }
+        this.commands.banner = new Supplier<String>() {
+            private boolean loaded;
+            private String banner;
+
+            @Override
+            public synchronized String get() {
+                if (!loaded) {
+                    banner = loadBanner(resource, patterns);
+                    loaded = true;
                 }
+                return banner;
             }
-            return null;
         };
         return this;
     }
 
+    private String loadBanner(String resource, Map<Pattern, String> replacements) {
+        InputStream resourceAsStream = this.getClass().getClassLoader().getResourceAsStream(resource);
+        if (null == resourceAsStream) {
+            return null;
+        }
+        String result;
+        try (BufferedReader is = new BufferedReader(new InputStreamReader(resourceAsStream))) {
+            result = is.lines().collect(Collectors.joining("\n"));
+        } catch (IOException | UncheckedIOException e) {
+            return null;
+        }
+        for (Map.Entry<Pattern, String> entry : replacements.entrySet()) {
+            result = entry.getKey().matcher(result).replaceAll(entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Only display the banner when a console is attached, skipping it when output is redirected or piped
+     *
+     * @param enabled true to only display the banner on a console (default false)
+     *
+     * @return this
+     */
+    public ToolBelt bannerConsoleOnly(boolean enabled) {
+        this.commands.bannerConsoleOnly = enabled;
+        return this;
+    }
+
     public interface CommandContext {
 
         public CommandInput getInputParser();
 
         public CommandOutput getOutput();
 
+        /**
+         * @return the channel routing for output, which can be reconfigured while running
+         */
+        default ChannelOutput getChannels() {
+            return null;
+        }
+
+        /**
+         * @return executor for asynchronous commands and their work, using virtual threads when available
+         */
+        default Executor getExecutor() {
+            return ForkJoinPool.commonPool();
+        }
+
+        /**
+         * @return maximum time to wait for an asynchronous command to complete, or null to wait until it completes
+         */
+        default Duration getTimeout() {
+            return null;
+        }
+
+        /**
+         * @return cache for the output of commands which declare a cache TTL, or null
+         */
+        default CommandCache getCache() {
+            return null;
+        }
+
+        /**
+         * @return objects output by the previous command in a pipeline, or null
+         */
+        default List<?> getPipeInput() {
+            return null;
+        }
+
+        /**
+         * @return output collecting objects for the next command in a pipeline, or null
+         */
+        default CommandOutput getPipeOutput() {
+            return null;
+        }
+
+        /**
+         * @return true if commands can be run as a pipeline, so {@link Stream} and {@link Iterable} parameters receive
+         * the objects output by the previous command
+         */
+        default boolean isPipelines() {
+            return false;
+        }
+
         public boolean isPrintStackTrace();
 
         public Map<Class<? extends Throwable>, ErrorHandler> getErrorHandlers();
@@ -298,9 +427,18 @@ public class ToolBelt {
     {
         private CommandInput inputParser;
         private CommandOutput output;
+        private Flushable flushable;
+        private Closeable closeable;
+        private ChannelOutput channels;
+        private Executor executor;
+        private Duration timeout;
+        private CommandCache cache;
+        private List<?> pipeInput;
+        private CommandOutput pipeOutput;
+        private boolean pipelines;
         private boolean printStackTrace;
         private Map<Class<? extends Throwable>, ErrorHandler> errorHandlers = new HashMap<>();
-        Queue<String> commands = new ArrayDeque<>();
+        Deque<String> commands = new ArrayDeque<>();
 
 
         @Override
@@ -325,6 +463,17 @@ public class ToolBelt {
             return commands.remove();
         }
 
+        /**
+         * Discard commands pushed after the given depth
+         *
+         * @param depth number of commands to retain
+         */
+        void resetCommands(int depth) {
+            while (commands.size() > depth) {
+                commands.removeLast();
+            }
+        }
+
         public CommandInput getInputParser() {
             return inputParser;
         }
@@ -341,6 +490,103 @@ public class ToolBelt {
             this.output = output;
         }
 
+        @Override
+        public ChannelOutput getChannels() {
+            return channels;
+        }
+
+        void setChannels(ChannelOutput channels) {
+            this.channels = channels;
+        }
+
+        @Override
+        public synchronized Executor getExecutor() {
+            if (null == executor) {
+                executor = CommandExecutors.newDefault();
+            }
+            return executor;
+        }
+
+        synchronized void setExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public CommandCache getCache() {
+            return cache;
+        }
+
+        void setCache(CommandCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public List<?> getPipeInput() {
+            return pipeInput;
+        }
+
+        @Override
+        public CommandOutput getPipeOutput() {
+            return pipeOutput;
+        }
+
+        void setPipe(List<?> input, CommandOutput output) {
+            this.pipeInput = input;
+            this.pipeOutput = output;
+        }
+
+        @Override
+        public boolean isPipelines() {
+            return pipelines;
+        }
+
+        void setPipelines(boolean pipelines) {
+            this.pipelines = pipelines;
+        }
+
+        void setFlushable(Flushable flushable) {
+            this.flushable = flushable;
+        }
+
+        /**
+         * Wait for delivery of asynchronous output, and flush buffered output
+         */
+        void flushOutput() {
+            if (null != flushable) {
+                try {
+                    flushable.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        void setCloseable(Closeable closeable) {
+            this.closeable = closeable;
+        }
+
+        /**
+         * Flush and close output created for the tool
+         */
+        void closeOutput() {
+            if (null != closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
         public boolean isPrintStackTrace() {
             return printStackTrace;
         }
@@ -369,7 +615,7 @@ public class ToolBelt {
 
     }
 
-    private static class CommandSet implements Tool, CommandInvoker {
+    private static class CommandSet implements Tool, CommandInvoker, Pipeline {
         Map<String, CommandInvoker> commands;
         Map<String, CommandInvoker> commandSynonyms;
         String defCommand;
@@ -381,8 +627,21 @@ public class ToolBelt {
         Tool other;
         private boolean showBanner;
         Supplier<String> banner;
+        boolean bannerConsoleOnly;
+        private Object bannerText;
         Supplier<Boolean> printStackTrace;
         public boolean hidden;
+        boolean prefixMatching;
+        boolean pipelines;
+        OutputFormats formats;
+        OutputFormatter baseFormatter;
+        FormattedOutput formattedOutput;
+        private CommandTrie<CommandInvoker> index;
+        /**
+         * rendered help lines, built on first request
+         */
+        private List<Object> helpLines;
+        private Map<CommandInvoker, List<String>> deepHelpLines;
 
         CommandSet(String name) {
             this.name = name;
@@ -412,6 +671,11 @@ public class ToolBelt {
             this.description = commandSet.description;
             this.context = commandSet.context;
             this.synonyms = new HashSet<>(commandSet.synonyms);
+            this.prefixMatching = commandSet.prefixMatching;
+            this.pipelines = commandSet.pipelines;
+            this.formats = commandSet.formats;
+            this.baseFormatter = commandSet.baseFormatter;
+            this.formattedOutput = commandSet.formattedOutput;
         }
 
         @Override
@@ -424,8 +688,14 @@ public class ToolBelt {
         @Override
         public boolean runMain(final String[] args, final boolean exitSystem) {
             boolean result = false;
+            int depth = context.commands.size();
+            OutputFormatter formatter = null != formattedOutput ? formattedOutput.getFormatter() : null;
             try {
-                result = run(args);
+                String[] cmdArgs = selectFormat(args);
+                List<String[]> stages = pipelines ? split(cmdArgs) : null;
+                result = null != stages && stages.size() > 1
+                         ? pipe(stages.toArray(new String[0][]))
+                         : run(cmdArgs);
             } catch (CommandWarning commandRunFailure) {
                 context.getOutput().warning(commandRunFailure.getMessage());
             } catch (CommandRunFailure commandRunFailure) {
@@ -436,6 +706,15 @@ public class ToolBelt {
                     commandRunFailure.printStackTrace(new PrintWriter(sb));
                     context.getOutput().error(sb.toString());
                 }
+            } finally {
+                //allow the tool to be run again
+                context.resetCommands(depth);
+                if (!flushOutput()) {
+                    result = false;
+                }
+                if (null != formatter) {
+                    formattedOutput.setFormatter(formatter);
+                }
             }
             if (!result && exitSystem) {
                 System.exit(2);
@@ -443,6 +722,110 @@ public class ToolBelt {
             return result;
         }
 
+        /**
+         * Wait for delivery of the output, a failure is reported directly to the output channels
+         *
+         * @return false if the output could not be delivered
+         */
+        private boolean flushOutput() {
+            try {
+                context.flushOutput();
+                return true;
+            } catch (RuntimeException e) {
+                context.getChannels().error(
+                        null != e.getCause()
+                        ? e.getMessage() + ": " + e.getCause().getMessage()
+                        : e.getMessage()
+                );
+                return false;
+            }
+        }
+
+        @Override
+        public void close() {
+            context.closeOutput();
+        }
+
+        /**
+         * @return the args split at each pipe separator
+         */
+        private static List<String[]> split(final String[] args) {
+            List<String[]> stages = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i <= args.length; i++) {
+                if (i == args.length || PIPE_SEPARATOR.equals(args[i])) {
+                    stages.add(Arrays.copyOfRange(args, start, i));
+                    start = i + 1;
+                }
+            }
+            return stages;
+        }
+
+        @Override
+        public boolean pipe(final String[]... stages) throws CommandRunFailure {
+            for (String[] stage : stages) {
+                if (stage.length < 1) {
+                    throw new CommandWarning(String.format("Expected a command before and after %s", PIPE_SEPARATOR));
+                }
+            }
+            int depth = context.commands.size();
+            List<Object> input = null;
+            try {
+                for (int i = 0; i < stages.length; i++) {
+                    PipeOutput output = i < stages.length - 1 ? new PipeOutput(context.getOutput()) : null;
+                    context.resetCommands(depth);
+                    context.setPipe(input, output);
+                    if (!run(stages[i])) {
+                        return false;
+                    }
+                    input = null != output ? output.getItems() : null;
+                }
+                return true;
+            } finally {
+                context.setPipe(null, null);
+                context.resetCommands(depth);
+            }
+        }
+
+        /**
+         * Select the output format given by a leading "--format NAME" or "--format=NAME" option
+         *
+         * @return remaining args
+         */
+        private String[] selectFormat(final String[] args) throws CommandWarning {
+            if (null == formats || args.length < 1 || !args[0].startsWith(FORMAT_OPTION)) {
+                return args;
+            }
+            String name;
+            int used;
+            if (args[0].equals(FORMAT_OPTION)) {
+                if (args.length < 2) {
+                    throw new CommandWarning(String.format(
+                            "Expected a format for %s: %s",
+                            FORMAT_OPTION,
+                            String.join(", ", formats.getNames())
+                    ));
+                }
+                name = args[1];
+                used = 2;
+            } else if (args[0].startsWith(FORMAT_OPTION + "=")) {
+                name = args[0].substring(FORMAT_OPTION.length() + 1);
+                used = 1;
+            } else {
+                return args;
+            }
+            OutputFormatter formatter = formats.create(name, baseFormatter);
+            if (null == formatter) {
+                throw new CommandWarning(String.format(
+                        "Unknown format: %s, expected one of: %s",
+                        name,
+                        String.join(", ", formats.getNames())
+                ));
+            }
+            formattedOutput.setFormatter(formatter);
+            return Arrays.copyOfRange(args, used, args.length);
+        }
+
         @Override
         public boolean run(final String[] args)
                 throws CommandRunFailure
@@ -512,56 +895,18 @@ public class ToolBelt {
         }
 
         public void getHelp(boolean banner) {
-            if (banner && null != this.banner) {
-                context.getOutput().output(ANSIColorOutput.colorizeTemplate(this.banner.get()));
-            }
-            if (description != null && !"".equals(description)) {
-                context.getOutput().output(
-                        ANSIColorOutput.colorize(
-                                "\n",
-                                ANSIColorOutput.Color.WHITE,
-                                name+": ",
-                                description + "\n"
-                        )
-                );
+            if (banner && null != this.banner && (!bannerConsoleOnly || null != System.console())) {
+                if (null == bannerText) {
+                    String text = this.banner.get();
+                    bannerText = null != text ? ANSIColorOutput.colorizeTemplate(text) : "";
+                }
+                if (!"".equals(bannerText)) {
+                    context.getOutput().output(bannerText);
+                }
             }
-
-            List<String> subcommands = commands.keySet()
-                                                  .stream()
-                                                  .sorted()
-                                                  .filter(name -> !commands.get(name).isHidden())
-                                                  .filter(name -> !commands.get(name).isSolo())
-                    .collect(Collectors.toList());
-            if(subcommands.size()>0) {
-                context.getOutput().output("Available commands:\n");
-                int max = subcommands.stream().mapToInt(String::length).max().orElse(10);
-                subcommands
-                        .forEach(name -> {
-                                     context.getOutput()
-                                            .output(
-                                                    ANSIColorOutput.colorize(
-                                                            ANSIColorOutput.Color.YELLOW,
-                                                            String.format(
-                                                                    "   %s",
-                                                                    name
-                                                            ),
-                                                            String.format(
-                                                                    "%s - %s",
-                                                                    pad(
-                                                                            " ",
-                                                                            max -
-                                                                            name.length()
-                                                                    ),
-                                                                    shortDescription(
-                                                                            commands.get(name)
-                                                                                    .getDescription()
-                                                                    )
-
-                                                            )
-                                                    )
-                                            );
-                                 }
-                        );
+            List<Object> lines = helpLines();
+            for (Object line : lines) {
+                context.getOutput().output(line);
             }
             //find solo command
             commands.values()
@@ -578,24 +923,88 @@ public class ToolBelt {
                             )
                     )
             );
+            if (null != formats) {
+                context.getOutput().output(
+                        ANSIColorOutput.colorize(
+                                ANSIColorOutput.Color.GREEN,
+                                String.format(
+                                        "Use \"%s %s <format> [command]\" to choose the output format: %s",
+                                        context.getCommandsString(),
+                                        FORMAT_OPTION,
+                                        String.join(", ", formats.getNames())
+                                )
+                        )
+                );
+            }
 
         }
-        void deepHelp(){
-            for (String command : commands.keySet()) {
-                CommandInvoker commandInvoker = commands.get(command);
-                if(commandInvoker.isHidden()){
-                   continue;
+        /**
+         * @return the description and list of available commands
+         */
+        private List<Object> helpLines() {
+            if (null == helpLines) {
+                List<Object> lines = new ArrayList<>();
+                if (description != null && !"".equals(description)) {
+                    lines.add(
+                            ANSIColorOutput.colorize(
+                                    "\n",
+                                    ANSIColorOutput.Color.WHITE,
+                                    name + ": ",
+                                    description + "\n"
+                            )
+                    );
                 }
 
-
-                context.getOutput().output("--------------------");
-                context.getOutput().output("+ Command: " + command);
-                if (commandInvoker.getSynonyms() != null && commandInvoker.getSynonyms().size() > 0) {
-                    context.getOutput().output("+ Synonyms: " + commandInvoker.getSynonyms());
+                List<String> subcommands = commands.keySet()
+                                                   .stream()
+                                                   .sorted()
+                                                   .filter(name -> !commands.get(name).isHidden())
+                                                   .filter(name -> !commands.get(name).isSolo())
+                                                   .collect(Collectors.toList());
+                if (subcommands.size() > 0) {
+                    lines.add("Available commands:\n");
+                    int max = subcommands.stream().mapToInt(String::length).max().orElse(10);
+                    for (String name : subcommands) {
+                        lines.add(
+                                ANSIColorOutput.colorize(
+                                        ANSIColorOutput.Color.YELLOW,
+                                        String.format("   %s", name),
+                                        String.format(
+                                                "%s - %s",
+                                                pad(" ", max - name.length()),
+                                                shortDescription(commands.get(name).getDescription())
+                                        )
+                                )
+                        );
+                    }
                 }
+                helpLines = Collections.unmodifiableList(lines);
+            }
+            return helpLines;
+        }
 
-                commandInvoker.getHelp();
+        void deepHelp(){
+            if (null == deepHelpLines) {
+                Map<CommandInvoker, List<String>> lines = new LinkedHashMap<>();
+                for (String command : commands.keySet()) {
+                    CommandInvoker commandInvoker = commands.get(command);
+                    if (commandInvoker.isHidden()) {
+                        continue;
+                    }
+                    List<String> header = new ArrayList<>();
+                    header.add("--------------------");
+                    header.add("+ Command: " + command);
+                    if (commandInvoker.getSynonyms() != null && commandInvoker.getSynonyms().size() > 0) {
+                        header.add("+ Synonyms: " + commandInvoker.getSynonyms());
+                    }
+                    lines.put(commandInvoker, header);
+                }
+                deepHelpLines = lines;
             }
+            deepHelpLines.forEach((commandInvoker, header) -> {
+                header.forEach(context.getOutput()::output);
+                commandInvoker.getHelp();
+            });
             if (null != other) {
                 other.getHelp();
             }
@@ -605,14 +1014,28 @@ public class ToolBelt {
         {
             CommandInvoker commandInvoke = findcommand(cmd);
             if (null == commandInvoke) {
+                List<String> matching = prefixMatching ? index().matching(cmd) : Collections.emptyList();
+                if (matching.size() > 1) {
+                    throw new CommandWarning(String.format(
+                            "Ambiguous command: %s. Matching commands: %s",
+                            cmd,
+                            matching
+                    ));
+                }
+                List<String> suggestions = index().suggest(cmd, cmd.length() > 4 ? 2 : 1);
                 throw new CommandWarning(String.format(
-                        "No such command: %s. Available commands: %s",
+                        "No such command: %s.%s Available commands: %s",
                         cmd,
+                        suggestions.isEmpty() ? "" : String.format(
+                                " Did you mean: %s?",
+                                String.join(", ", suggestions.subList(0, Math.min(suggestions.size(), 5)))
+                        ),
                         listCommands()
                 ));
             }
             context.pushCommand(cmd);
-            if (args.length > 0 && helpCommands.contains(args[0])) {
+            //completion words are completed, even if they are help commands
+            if (args.length > 0 && helpCommands.contains(args[0]) && !(commandInvoke instanceof CompletionInvoker)) {
                 commandInvoke.getHelp();
                 return false;
             }
@@ -620,15 +1043,51 @@ public class ToolBelt {
         }
 
         /**
-         * Find invoker for a command or a synonym
+         * Find invoker for a command or a synonym, or an unambiguous prefix of one if prefix matching is enabled
          *
          * @param cmd
          *
          * @return
          */
         private CommandInvoker findcommand(final String cmd) {
-            CommandInvoker commandInvoker = commands.get(cmd);
-            return commandInvoker != null ? commandInvoker : commandSynonyms.get(cmd);
+            CommandTrie<CommandInvoker> index = index();
+            CommandInvoker commandInvoker = index.get(cmd);
+            if (null == commandInvoker && prefixMatching) {
+                commandInvoker = index.unique(cmd);
+            }
+            return commandInvoker;
+        }
+
+        /**
+         * @return the index of command names and synonyms, built if necessary
+         */
+        private CommandTrie<CommandInvoker> index() {
+            if (null == index) {
+                CommandTrie<CommandInvoker> trie = new CommandTrie<>();
+                commandSynonyms.forEach((name, invoker) -> trie.put(name, invoker, !invoker.isHidden()));
+                commands.forEach((name, invoker) -> trie.put(name, invoker, !invoker.isHidden()));
+                index = trie;
+            }
+            return index;
+        }
+
+        /**
+         * Build the command index for this and all nested command sets
+         *
+         * @param prefixMatching true to resolve unambiguous command prefixes
+         */
+        void compile(boolean prefixMatching) {
+            this.prefixMatching = prefixMatching;
+            this.index = null;
+            this.helpLines = null;
+            this.deepHelpLines = null;
+            this.bannerText = null;
+            index();
+            commands.values()
+                    .stream()
+                    .filter(CommandSet.class::isInstance)
+                    .distinct()
+                    .forEach(sub -> ((CommandSet) sub).compile(prefixMatching));
         }
 
         @Override
@@ -672,50 +1131,121 @@ public class ToolBelt {
         return strings;
     }
 
-    private void introspect(final Object instance) {
-        introspect(commands, instance);
+    private void introspect(final Scanned scanned) {
+        introspect(commands, scanned);
     }
 
     /**
-     * determine container/commands from annotations on an object, and add to the command set.
-     *
-     * @param parent
-     * @param instance
+     * A command object with the metadata of its class, and its subcommands if it has any
      */
-    private void introspect(CommandSet parent, final Object instance) {
-        Class<?> aClass = instance.getClass();
-        SubCommand annotation1 = aClass.getAnnotation(SubCommand.class);
-        List<String> path = new ArrayList<>();
-        if (null != annotation1 && annotation1.path().length > 0) {
-            path.addAll(Arrays.asList(annotation1.path()));
-        }
-        List<String> descriptions = new ArrayList<>();
-        if (null != annotation1 && annotation1.descriptions().length > 0) {
-            descriptions.addAll(Arrays.asList(annotation1.descriptions()));
-        }
-        if (path.size() > 0) {
-            try {
-                parent = locatePath(parent, path, descriptions);
-            } catch (InvalidPath invalidPath) {
-                throw new RuntimeException(String.format(
-                        "Unable to define subcommand object of type %s at path: '%s': %s",
-                        instance.getClass().getName(),
-                        String.join(" ", path),
-                        invalidPath.getMessage()
-                ), invalidPath);
-            }
+    private static class Scanned {
+        final Object instance;
+        final CommandSnapshot.TypeInfo type;
+        List<Scanned> children;
+
+        Scanned(final Object instance, final CommandSnapshot.TypeInfo type) {
+            this.instance = instance;
+            this.type = type;
         }
-        addCommandForParent(parent, instance);
     }
 
     /**
-     * Given a parent and a path, return a CommandSet matching the path
-     *
-     * @param parent
-     * @param path
+     * Scans a command object and its subcommands, forking a task for each subcommand
      */
-    private CommandSet locatePath(final CommandSet parent, final List<String> path, final List<String>  descriptions) throws InvalidPath {
-        if (path == null || path.size() < 1) {
+    private static class ScanTask
+            extends RecursiveTask<Scanned>
+    {
+        private static final long serialVersionUID = 1L;
+        private final CommandSnapshot snapshot;
+        private final Object instance;
+
+        ScanTask(final CommandSnapshot snapshot, final Object instance) {
+            this.snapshot = snapshot;
+            this.instance = instance;
+        }
+
+        @Override
+        protected Scanned compute() {
+            Scanned scanned = new Scanned(instance, snapshot.type(instance.getClass()));
+            if (instance instanceof HasSubCommands && !(instance instanceof CommandInvoker)) {
+                scanned.children = invokeAll(snapshot, ((HasSubCommands) instance).getSubCommands());
+            }
+            return scanned;
+        }
+
+        /**
+         * @return the scanned objects, in the same order
+         */
+        static List<Scanned> invokeAll(CommandSnapshot snapshot, List<?> instances) {
+            List<ScanTask> tasks = new ArrayList<>();
+            for (Object instance : instances) {
+                tasks.add(new ScanTask(snapshot, instance));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            List<Scanned> result = new ArrayList<>();
+            for (ScanTask task : tasks) {
+                result.add(task.join());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Determine the metadata of the objects and their subcommands, concurrently if an introspection pool is set
+     *
+     * @param instances command objects
+     *
+     * @return scanned objects in the same order
+     */
+    private List<Scanned> scan(List<?> instances) {
+        if (null != introspectionPool) {
+            return introspectionPool.invoke(ForkJoinTask.adapt(() -> ScanTask.invokeAll(snapshot, instances)));
+        }
+        List<Scanned> result = new ArrayList<>();
+        for (Object instance : instances) {
+            Scanned scanned = new Scanned(instance, snapshot.type(instance.getClass()));
+            if (instance instanceof HasSubCommands && !(instance instanceof CommandInvoker)) {
+                scanned.children = scan(((HasSubCommands) instance).getSubCommands());
+            }
+            result.add(scanned);
+        }
+        return result;
+    }
+
+    /**
+     * determine container/commands from annotations on an object, and add to the command set.
+     *
+     * @param parent
+     * @param instance
+     */
+    private void introspect(CommandSet parent, final Scanned scanned) {
+        Object instance = scanned.instance;
+        CommandSnapshot.TypeInfo type = scanned.type;
+        List<String> path = type.path;
+        List<String> descriptions = type.descriptions;
+        if (path.size() > 0) {
+            try {
+                parent = locatePath(parent, path, descriptions);
+            } catch (InvalidPath invalidPath) {
+                throw new RuntimeException(String.format(
+                        "Unable to define subcommand object of type %s at path: '%s': %s",
+                        instance.getClass().getName(),
+                        String.join(" ", path),
+                        invalidPath.getMessage()
+                ), invalidPath);
+            }
+        }
+        addCommandForParent(parent, scanned);
+    }
+
+    /**
+     * Given a parent and a path, return a CommandSet matching the path
+     *
+     * @param parent
+     * @param path
+     */
+    private CommandSet locatePath(final CommandSet parent, final List<String> path, final List<String>  descriptions) throws InvalidPath {
+        if (path == null || path.size() < 1) {
             return parent;
         }
         String part = path.get(0);
@@ -758,7 +1288,8 @@ public class ToolBelt {
         }
     }
 
-    private void addCommandForParent(CommandSet parent, final Object instance) {
+    private void addCommandForParent(CommandSet parent, final Scanned scanned) {
+        Object instance = scanned.instance;
         if(instance instanceof CommandInvoker){
             CommandInvoker cmd=(CommandInvoker)instance;
             parent.commands.put(cmd.getName(), cmd);
@@ -771,55 +1302,31 @@ public class ToolBelt {
         HashMap<String, CommandInvoker> subSynonyms = new HashMap<>();
         //look for methods
         Class<?> aClass = instance.getClass();
-        Command annotation1 = aClass.getAnnotation(Command.class);
-        Set<String> synonyms = new HashSet<>();
-        String cmd = null != annotation1 ? annotation1.value() : "";
-        if ("".equals(cmd)) {
-            cmd = aClass.getSimpleName().toLowerCase();
-        }
-        if (null != annotation1 && annotation1.synonyms().length > 0) {
-            synonyms.addAll(Arrays.asList(annotation1.synonyms()));
-        }
-        String cmdDescription = null != annotation1 ? annotation1.description() : null;
-        boolean isSub = false;
-
-        SubCommand subcmdAnnotation = aClass.getAnnotation(SubCommand.class);
-        if (null != subcmdAnnotation) {
-            isSub = true;
-        }
-
-        boolean isHidden = null != annotation1 && annotation1.isHidden();
-        Hidden annotation2 = aClass.getAnnotation(Hidden.class);
-        if (null != annotation2) {
-            isHidden = true;
-        }
+        CommandSnapshot.TypeInfo type = scanned.type;
+        Set<String> synonyms = type.synonyms;
+        String cmd = type.name;
+        String cmdDescription = type.description;
+        boolean isSub = type.sub;
+        boolean isHidden = type.hidden;
         String defInvoke = null;
 
-        Method[] methods = aClass.getMethods();
-        for (Method method : methods) {
-            Command annotation = method.getAnnotation(Command.class);
-            if (annotation != null) {
-                String name = annotation.value();
-                if ("".equals(name)) {
-                    name = method.getName().toLowerCase();
-                }
-                MethodInvoker value = new MethodInvoker(name, method, instance, commands.context);
-                value.description = annotation.description();
-                value.solo = annotation.isSolo();
-                value.hidden = annotation.isHidden();
-                Set<String> annotationSynonyms = new HashSet<>();
-                if (annotation.synonyms().length > 0) {
-                    annotationSynonyms.addAll(Arrays.asList(annotation.synonyms()));
-                }
-                value.setSynonyms(annotationSynonyms);
-                subCommands.put(name, value);
-                for (String subsynonym : annotationSynonyms) {
-                    subSynonyms.put(subsynonym, value);
-                }
+        for (CommandSnapshot.MethodInfo method : type.methods) {
+            String name = method.name;
+            MethodInvoker value = new MethodInvoker(name, method, instance, commands.context);
+            value.description = method.description;
+            value.solo = method.solo;
+            value.hidden = method.hidden;
+            value.formatResult = method.formatResult;
+            value.cacheTtl = method.cacheTtl;
+            Set<String> annotationSynonyms = new HashSet<>(method.synonyms);
+            value.setSynonyms(annotationSynonyms);
+            subCommands.put(name, value);
+            for (String subsynonym : annotationSynonyms) {
+                subSynonyms.put(subsynonym, value);
+            }
 
-                if (annotation.isDefault()) {
-                    defInvoke = name;
-                }
+            if (method.isDefault) {
+                defInvoke = name;
             }
         }
 
@@ -833,9 +1340,7 @@ public class ToolBelt {
             if (subCommands.size() < 1) {
                 isSub = true;
             }
-            HasSubCommands subs = (HasSubCommands) instance;
-            List<Object> subCommands1 = subs.getSubCommands();
-            subCommands1.forEach(o -> introspect(commandSet, o));
+            scanned.children.forEach(o -> introspect(commandSet, o));
         }
         if (commandSet.commands.size() < 1 && subCommands.size() < 1) {
             throw new IllegalArgumentException(
@@ -872,6 +1377,179 @@ public class ToolBelt {
         return this;
     }
 
+    /**
+     * Allow commands to be invoked by any unambiguous prefix of their name or synonym, e.g. "jo li" for "jobs list".
+     * Hidden commands can only be invoked by their full name.
+     *
+     * @param enabled true to enable prefix matching (default false)
+     *
+     * @return this
+     */
+    public ToolBelt commandPrefixes(boolean enabled) {
+        this.prefixMatching = enabled;
+        return this;
+    }
+
+    /**
+     * Allow commands to be run as a pipeline, separated by "++", e.g. "jobs list --project X ++ executions kill". The
+     * output objects of each command are passed to the next command, as a {@link Stream} or {@link Iterable} parameter,
+     * instead of being formatted.
+     *
+     * @param enabled true to enable pipelines (default false)
+     *
+     * @return this
+     */
+    public ToolBelt pipelines(boolean enabled) {
+        this.pipelines = enabled;
+        return this;
+    }
+
+    /**
+     * Add hidden commands for shell completion: "__complete [words...]" prints candidates for the last word, and
+     * "__completion bash|zsh|fish" prints a completion script for the shell. "__completion index" prints the serialized
+     * {@link CompletionIndex}, which can be bundled as a resource and answered by {@link
+     * CompletionIndex#complete(String[], String)} without building the tool.
+     *
+     * @return this
+     */
+    public ToolBelt completion() {
+        return completion(true);
+    }
+
+    /**
+     * Enable or disable the shell completion commands
+     *
+     * @param enabled true to enable completion commands (default false)
+     *
+     * @return this
+     * @see #completion()
+     */
+    public ToolBelt completion(boolean enabled) {
+        this.completion = enabled;
+        return this;
+    }
+
+    /**
+     * Add a "--format NAME" option, given before the command, which selects the output format by name from the {@link
+     * OutputFormatterProvider} services on the classpath, e.g. "json" or "yaml". The "nice" format uses only the
+     * default formatting. A formatter is only loaded when selected, otherwise the {@link #formatter(OutputFormatter)}
+     * is used.
+     *
+     * @return this
+     */
+    public ToolBelt formatOption() {
+        return formatOption(OutputFormats.load());
+    }
+
+    /**
+     * Add a "--format NAME" option with the given formats
+     *
+     * @param formats available formats, or null to disable the option
+     *
+     * @return this
+     * @see #formatOption()
+     */
+    public ToolBelt formatOption(OutputFormats formats) {
+        this.formats = formats;
+        return this;
+    }
+
+    /**
+     * Set the executor for commands which return a {@link CompletionStage}, the command method is invoked on the
+     * executor, and commands can use it for their own work by declaring an {@link Executor} parameter. The default
+     * starts a virtual thread per task when the runtime supports them, otherwise it uses a pool of daemon threads.
+     *
+     * @param executor executor
+     *
+     * @return this
+     */
+    public ToolBelt commandExecutor(Executor executor) {
+        commands.context.setExecutor(executor);
+        return this;
+    }
+
+    /**
+     * Set the maximum time to wait for commands which return a {@link CompletionStage}. A command which does not
+     * complete in time fails: its thread is interrupted if the method has not yet returned, and the returned stage is
+     * cancelled.
+     *
+     * @param timeout timeout, or null to wait until complete (default)
+     *
+     * @return this
+     */
+    public ToolBelt commandTimeout(Duration timeout) {
+        commands.context.setTimeout(timeout);
+        return this;
+    }
+
+    /**
+     * Set the cache for the output of commands which declare {@link Command#cacheTtl()}. A cached command is not
+     * invoked, its output is replayed.
+     *
+     * @param cache cache, or null to disable (default)
+     *
+     * @return this
+     */
+    public ToolBelt commandCache(CommandCache cache) {
+        commands.context.setCache(cache);
+        return this;
+    }
+
+    /**
+     * Scan command objects added together, and the subcommands of {@link HasSubCommands} objects, concurrently on the
+     * common fork-join pool. The commands are still added in order, so the result is the same as a serial scan.
+     *
+     * @param enabled true to scan concurrently (default false)
+     *
+     * @return this
+     */
+    public ToolBelt parallelIntrospection(boolean enabled) {
+        return parallelIntrospection(enabled ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Scan command objects added together, and the subcommands of {@link HasSubCommands} objects, concurrently on the
+     * pool. {@link HasSubCommands#getSubCommands()} may be called on the pool threads. The commands are still added in
+     * order, so the result is the same as a serial scan.
+     *
+     * @param pool pool, or null to scan serially
+     *
+     * @return this
+     */
+    public ToolBelt parallelIntrospection(ForkJoinPool pool) {
+        this.introspectionPool = pool;
+        return this;
+    }
+
+    /**
+     * Load the command metadata of introspected classes from a snapshot file, if it was written for the current
+     * classpath, and write the file when the tool is built if any classes had to be introspected. With a current
+     * snapshot, classes are not scanned for command methods, and the methods are only resolved when invoked. This must
+     * be called before adding commands.
+     *
+     * @param file snapshot file
+     *
+     * @return this
+     */
+    public ToolBelt commandSnapshot(Path file) {
+        return commandSnapshot(file, CommandSnapshot.classpathFingerprint());
+    }
+
+    /**
+     * Load the command metadata of introspected classes from a snapshot file, if it was written with the same
+     * fingerprint, and write the file when the tool is built if any classes had to be introspected. This must be called
+     * before adding commands.
+     *
+     * @param file        snapshot file
+     * @param fingerprint identifies the version of the command classes, such as the application version
+     *
+     * @return this
+     */
+    public ToolBelt commandSnapshot(Path file, String fingerprint) {
+        this.snapshot = new CommandSnapshot(file, fingerprint);
+        return this;
+    }
+
     /**
      * Enable or disable stacktrace printing on error
      *
@@ -909,8 +1587,32 @@ public class ToolBelt {
         if (commands.commands.size() == 1) {
             commands.defCommand = commands.commands.keySet().iterator().next();
         }
+        if (completion) {
+            CompletionInvoker.Indexer indexer = new CompletionInvoker.Indexer(commands, inputParser);
+            commands.commands.put(
+                    CompletionIndex.COMPLETE_COMMAND,
+                    new CompletionInvoker(CompletionIndex.COMPLETE_COMMAND, indexer, commands.context)
+            );
+            commands.commands.put(
+                    CompletionIndex.COMPLETION_COMMAND,
+                    new CompletionInvoker(CompletionIndex.COMPLETION_COMMAND, indexer, commands.context)
+            );
+        }
         commands.context.pushCommand(commands.name);
         commands.context.setOutput(finalOutput());
+        if (null != formats && builtOutput instanceof FormattedOutput) {
+            commands.formats = formats;
+            commands.baseFormatter = baseFormatter;
+            commands.formattedOutput = (FormattedOutput) builtOutput;
+        }
+        commands.pipelines = pipelines;
+        commands.context.setPipelines(pipelines);
+        commands.compile(prefixMatching);
+        try {
+            snapshot.save();
+        } catch (IOException e) {
+            commands.context.getOutput().debug("Unable to write command snapshot: " + e.getMessage());
+        }
         return commands;
     }
 
@@ -926,9 +1628,24 @@ public class ToolBelt {
         baseFormatter = defaultBaseFormatter();
         channels.fallback(commandOutput);
         ChannelOutput channel = channels.build();
+        commands.context.setChannels(channel);
         if (null == builtOutput) {
+            CommandOutput delegate = channel;
+            if (!tees.isEmpty()) {
+                TeeOutput tee = new TeeOutput(channel);
+                tee.getOutputs().addAll(tees);
+                delegate = tee;
+            }
+            if (asyncOutput) {
+                AsyncCommandOutput async = asyncBuilder.delegate(delegate).build();
+                commands.context.setCloseable(async);
+                delegate = async;
+            }
+            if (delegate instanceof Flushable) {
+                commands.context.setFlushable((Flushable) delegate);
+            }
             builtOutput = new FormattedOutput(
-                    channel,
+                    delegate,
                     null != formatter ? formatter.withBase(baseFormatter) : baseFormatter
             );
         }
@@ -976,38 +1693,87 @@ public class ToolBelt {
     {
         private String name;
         private Set<String> synonyms;
-        Method method;
+        private CommandSnapshot.MethodInfo info;
+        private Method method;
         Object instance;
         private String description;
         private boolean solo;
         private boolean hidden;
+        private boolean formatResult = true;
+        private long cacheTtl;
         CommandContext context;
 
         MethodInvoker(
                 final String name,
-                final Method method,
+                final CommandSnapshot.MethodInfo info,
                 final Object instance,
                 final CommandContext context
         )
         {
             this.name = name;
-            this.method = method;
+            this.info = info;
             this.instance = instance;
             this.context = context;
         }
 
+        /**
+         * @return the command method, resolved on first use
+         */
+        Method method() {
+            if (null == method) {
+                method = info.resolve(instance.getClass());
+            }
+            return method;
+        }
+
 
         public boolean run(String[] args) throws CommandRunFailure {
+            if (null != context.getPipeOutput()) {
+                return invoke(args, context.getPipeOutput());
+            }
+            CommandCache cache = cacheTtl > 0 && null == context.getPipeInput() ? context.getCache() : null;
+            if (null == cache || !(context.getOutput() instanceof FormattedOutput)) {
+                return invoke(args, context.getOutput());
+            }
+            //cache the formatted output
+            FormattedOutput formatted = (FormattedOutput) context.getOutput();
+            String key = cache.key(context.getCommands(), args, formatted.getFormatter());
+            if (cache.replay(key, formatted.delegate)) {
+                return true;
+            }
+            CommandCache.Recorder recorder = cache.record(formatted.delegate);
+            boolean result = invoke(args, new FormattedOutput(recorder, formatted.getFormatter()));
+            if (result) {
+                try {
+                    cache.store(key, recorder, Duration.ofSeconds(cacheTtl));
+                } catch (IOException e) {
+                    formatted.debug("Unable to cache output of command " + name + ": " + e.getMessage());
+                }
+            }
+            return result;
+        }
+
+        private boolean invoke(String[] args, CommandOutput output) throws CommandRunFailure {
             //get configured arguments to the method
+            Method method = method();
             Class[] parameters = method.getParameterTypes();
             Parameter[] params = method.getParameters();
             Object[] objArgs = new Object[parameters.length];
+            boolean pipes = context.isPipelines() || null != context.getPipeInput();
             for (int i = 0; i < params.length; i++) {
                 Class<?> type = parameters[i];
                 String paramName = getParameterName(params[i]);
 
-                if (type.isAssignableFrom(CommandOutput.class)) {
-                    objArgs[i] = context.getOutput();
+                if (type.equals(ChannelOutput.class)) {
+                    objArgs[i] = context.getChannels();
+                } else if (type.equals(Executor.class)) {
+                    objArgs[i] = context.getExecutor();
+                } else if (pipes && type.equals(Stream.class)) {
+                    objArgs[i] = pipeInput().stream();
+                } else if (pipes && type.equals(Iterable.class)) {
+                    objArgs[i] = pipeInput();
+                } else if (type.isAssignableFrom(CommandOutput.class)) {
+                    objArgs[i] = output;
                 } else if (type.isAssignableFrom(String[].class)) {
                     objArgs[i] = args;
                 } else {
@@ -1025,6 +1791,9 @@ public class ToolBelt {
                     objArgs[i] = t;
                 }
             }
+            if (CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+                return await(objArgs, output);
+            }
             Object invoke = null;
             try {
                 invoke = method.invoke(instance, objArgs);
@@ -1033,31 +1802,213 @@ public class ToolBelt {
                 return false;
             } catch (InvocationTargetException e) {
                 if (e.getCause() != null) {
-                    if (context.handle(e.getCause(), name)) {
-                        return false;
-                    }
-                    if (e.getCause() instanceof RuntimeException) {
-                        throw (RuntimeException) e.getCause();
-                    }
-                    if (e.getCause() instanceof CommandRunFailure) {
-                        throw (CommandRunFailure) e.getCause();
-                    }
-                    e.getCause().printStackTrace();
-                } else {
-                    e.printStackTrace();
+                    return fail(e.getCause());
                 }
+                e.printStackTrace();
                 return false;
             }
+            return result(invoke, output);
+        }
+
+        /**
+         * @return objects from the previous command in a pipeline, or empty
+         */
+        private List<?> pipeInput() {
+            List<?> input = context.getPipeInput();
+            return null != input ? input : Collections.emptyList();
+        }
+
+        private boolean result(final Object invoke, final CommandOutput output) throws CommandRunFailure {
             if (invoke != null && (invoke instanceof Boolean || invoke.getClass().equals(boolean.class))) {
                 return ((Boolean) invoke);
             }
-            //TODO: format output
+            if (null == invoke || !formatResult) {
+                return true;
+            }
+            if (invoke instanceof Stream) {
+                return stream((Stream<?>) invoke, output);
+            }
+            if (FlowSubscriber.isPublisher(invoke)) {
+                return subscribe(invoke, output);
+            }
+            try {
+                output.output(invoke);
+            } catch (RuntimeException e) {
+                return fail(e);
+            }
+            return true;
+        }
+
+        /**
+         * Write the stream to the output as one result, which formatters can write item by item as it is produced
+         */
+        private boolean stream(final Stream<?> stream, final CommandOutput output) throws CommandRunFailure {
+            try (Stream<?> items = stream) {
+                output.output(streamed(items));
+            } catch (RuntimeException e) {
+                return fail(e);
+            }
+            return true;
+        }
+
+        /**
+         * Subscribe to a Flow.Publisher, and write its items to the output as one result, requesting more items as the
+         * output consumes them
+         */
+        private boolean subscribe(final Object publisher, final CommandOutput output) throws CommandRunFailure {
+            try (Stream<Object> items = FlowSubscriber.stream(publisher)) {
+                output.output(streamed(items));
+            } catch (FlowSubscriber.Failed e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    throw new CommandRunFailure(String.format("Command %s was interrupted", name), e.getCause());
+                }
+                return fail(e.getCause());
+            } catch (Throwable e) {
+                return fail(e);
+            }
             return true;
         }
 
+        private static Formatable streamed(final Stream<?> stream) {
+            return new Formatable() {
+                @Override
+                public Stream<?> asStream() {
+                    return stream;
+                }
+            };
+        }
+
+        private boolean fail(final Throwable cause) throws CommandRunFailure {
+            if (context.handle(cause, name)) {
+                return false;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof CommandRunFailure) {
+                throw (CommandRunFailure) cause;
+            }
+            cause.printStackTrace();
+            return false;
+        }
+
+        /**
+         * Invoke the method on the context executor, and wait for the returned stage to complete. On timeout or
+         * interruption, the thread is interrupted if the method has not returned, and the stage is cancelled
+         */
+        private boolean await(final Object[] objArgs, final CommandOutput output) throws CommandRunFailure {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            AtomicReference<CompletionStage<?>> started = new AtomicReference<>();
+            Worker worker = new Worker();
+            context.getExecutor().execute(() -> {
+                try {
+                    CompletionStage<?> stage;
+                    if (!worker.start()) {
+                        //timed out before it started
+                        return;
+                    }
+                    try {
+                        stage = (CompletionStage<?>) method().invoke(instance, objArgs);
+                    } finally {
+                        worker.finish();
+                    }
+                    if (null == stage) {
+                        result.complete(null);
+                        return;
+                    }
+                    started.set(stage);
+                    stage.whenComplete((value, failure) -> {
+                        if (null != failure) {
+                            result.completeExceptionally(failure);
+                        } else {
+                            result.complete(value);
+                        }
+                    });
+                } catch (InvocationTargetException e) {
+                    result.completeExceptionally(null != e.getCause() ? e.getCause() : e);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            Duration timeout = context.getTimeout();
+            try {
+                return result(
+                        null != timeout ? result.get(timeout.toNanos(), TimeUnit.NANOSECONDS) : result.get(),
+                        output
+                );
+            } catch (TimeoutException e) {
+                worker.interrupt();
+                cancel(started.get());
+                throw new CommandRunFailure(String.format("Command %s did not complete within %s", name, timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                worker.interrupt();
+                cancel(started.get());
+                throw new CommandRunFailure(String.format("Command %s was interrupted", name), e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                while (cause instanceof CompletionException && null != cause.getCause()) {
+                    cause = cause.getCause();
+                }
+                return fail(cause);
+            }
+        }
+
+        /**
+         * Cancel the stage returned by the command, or the future derived from it if it is not itself a Future
+         */
+        private static void cancel(CompletionStage<?> stage) {
+            if (stage instanceof Future) {
+                ((Future<?>) stage).cancel(true);
+            } else if (null != stage) {
+                try {
+                    stage.toCompletableFuture().cancel(true);
+                } catch (UnsupportedOperationException e) {
+                    //cannot be cancelled
+                }
+            }
+        }
+
+        /**
+         * The thread invoking a command method, which can be interrupted only while the method has not returned
+         */
+        private static final class Worker {
+            private Thread thread;
+            private boolean finished;
+            private boolean interrupted;
+
+            /**
+             * @return false if the command was abandoned before it started
+             */
+            synchronized boolean start() {
+                if (finished) {
+                    return false;
+                }
+                thread = Thread.currentThread();
+                return true;
+            }
+
+            synchronized void finish() {
+                thread = null;
+                finished = true;
+                if (interrupted) {
+                    //the method may have returned without handling the interrupt, and the thread may be pooled
+                    Thread.interrupted();
+                }
+            }
+
+            synchronized void interrupt() {
+                finished = true;
+                if (null != thread) {
+                    interrupted = true;
+                    thread.interrupt();
+                }
+            }
+        }
+
         @Override
         public void getHelp() {
-            Parameter[] params = method.getParameters();
+            Parameter[] params = method().getParameters();
             if (description != null && !"".equals(description)) {
                 context.getOutput().output(
                         ANSIColorOutput.colorize(
@@ -1077,7 +2028,7 @@ public class ToolBelt {
             for (int i = 0; i < params.length; i++) {
                 Class<?> type = params[i].getType();
                 String paramName = getParameterName(params[i]);
-                if (type.isAssignableFrom(CommandOutput.class) || type.isAssignableFrom(String[].class)) {
+                if (isInjected(type, context.isPipelines())) {
                     continue;
                 }
 
@@ -1118,6 +2069,125 @@ public class ToolBelt {
         }
     }
 
+    /**
+     * Hidden command answering completion requests, or printing completion scripts
+     */
+    private static class CompletionInvoker
+            implements CommandInvoker
+    {
+        private final String name;
+        private final Indexer indexer;
+        private final CommandContext context;
+
+        CompletionInvoker(final String name, final Indexer indexer, final CommandContext context) {
+            this.name = name;
+            this.indexer = indexer;
+            this.context = context;
+        }
+
+        /**
+         * Builds the completion index from the command tree on first use
+         */
+        static class Indexer {
+            private final CommandSet root;
+            private final CommandInput input;
+            private CompletionIndex index;
+
+            Indexer(final CommandSet root, final CommandInput input) {
+                this.root = root;
+                this.input = input;
+            }
+
+            CompletionIndex get() {
+                if (null == index) {
+                    index = new CompletionIndex(describe(root.name, root));
+                }
+                return index;
+            }
+
+            private CompletionIndex.Node describe(String name, CommandInvoker invoker) {
+                CompletionIndex.Node node = new CompletionIndex.Node(name, invoker.isHidden());
+                if (null != invoker.getSynonyms()) {
+                    node.getSynonyms().addAll(invoker.getSynonyms());
+                }
+                if (invoker instanceof CommandSet) {
+                    CommandSet commandSet = (CommandSet) invoker;
+                    commandSet.commands.forEach((sub, subInvoker) -> {
+                        CompletionIndex.Node child = describe(sub, subInvoker);
+                        if (subInvoker.isSolo() || sub.equals(commandSet.defCommand)) {
+                            //options of the default command are accepted by the command set
+                            node.getFlags().addAll(child.getFlags());
+                        }
+                        node.add(child);
+                    });
+                    commandSet.commandSynonyms.forEach((synonym, subInvoker) -> {
+                        CompletionIndex.Node child = node.getChildren().get(subInvoker.getName());
+                        if (null != child) {
+                            child.getSynonyms().add(synonym);
+                        }
+                    });
+                } else if (invoker instanceof MethodInvoker && null != input) {
+                    for (Parameter param : ((MethodInvoker) invoker).method().getParameters()) {
+                        Class<?> type = param.getType();
+                        if (isInjected(type, root.context.isPipelines())) {
+                            continue;
+                        }
+                        node.addFlags(input.getHelp(name, type, getParameterName(param)));
+                    }
+                }
+                return node;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isHidden() {
+            return true;
+        }
+
+        @Override
+        public boolean run(final String[] args) throws CommandRunFailure {
+            if (CompletionIndex.COMPLETE_COMMAND.equals(name)) {
+                indexer.get().complete(Arrays.asList(args)).forEach(context.getOutput()::output);
+                return true;
+            }
+            if (args.length != 1) {
+                throw new CommandWarning(String.format(
+                        "Usage: %s bash|zsh|fish|index",
+                        context.getCommandsString()
+                ));
+            }
+            if ("index".equals(args[0])) {
+                context.getOutput().output(indexer.get().toString().trim());
+                return true;
+            }
+            try {
+                context.getOutput().output(CompletionIndex.script(args[0], indexer.root.name).trim());
+            } catch (IllegalArgumentException e) {
+                throw new CommandWarning(e.getMessage());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param type      parameter type
+     * @param pipelines true if pipelines are enabled
+     *
+     * @return true if the parameter is provided by the tool rather than parsed from arguments
+     */
+    private static boolean isInjected(final Class<?> type, final boolean pipelines) {
+        return type.isAssignableFrom(CommandOutput.class)
+               || type.equals(ChannelOutput.class)
+               || type.equals(Executor.class)
+               || pipelines && (type.equals(Stream.class) || type.equals(Iterable.class))
+               || type.isAssignableFrom(String[].class);
+    }
+
     private static String getParameterName(final Parameter param) {
         if (param.getAnnotation(Arg.class) != null) {
             Arg annotation = param.getAnnotation(Arg.class);
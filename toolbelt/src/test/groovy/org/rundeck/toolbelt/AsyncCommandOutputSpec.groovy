@@ -0,0 +1,165 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+@Unroll
+class AsyncCommandOutputSpec extends Specification {
+    class TestOutput implements CommandOutput {
+        List<String> messages = Collections.synchronizedList([])
+        CountDownLatch gate
+
+        void deliver(String channel, Object message) {
+            gate?.await()
+            messages << "$channel:$message".toString()
+        }
+
+        @Override
+        void info(final Object output) {
+            deliver('info', output)
+        }
+
+        @Override
+        void output(final Object output) {
+            deliver('output', output)
+        }
+
+        @Override
+        void error(final Object error) {
+            deliver('error', error)
+        }
+
+        @Override
+        void warning(final Object error) {
+            deliver('warning', error)
+        }
+    }
+
+    def "delivers in order"() {
+        given:
+            def output = new TestOutput()
+            def async = AsyncCommandOutput.builder().delegate(output).build()
+        when:
+            async.info('a')
+            async.output('b')
+            async.warning('c')
+            async.error('d')
+            async.flush()
+        then:
+            output.messages == ['info:a', 'output:b', 'warning:c', 'error:d']
+        cleanup:
+            async.close()
+    }
+
+    def "overflow #overflow preserves order per thread"() {
+        given:
+            def output = new TestOutput()
+            def async = AsyncCommandOutput.builder().delegate(output).capacity(4).overflow(overflow).build()
+            def executor = Executors.newFixedThreadPool(4)
+        when:
+            (0..<4).collect { t ->
+                executor.submit({
+                    (0..<500).each { i -> async.output("$t-$i") }
+                } as Runnable)
+            }*.get()
+            async.flush()
+        then:
+            output.messages.size() == 2000
+            (0..<4).every { t ->
+                def seq = output.messages.findAll { it.startsWith("output:$t-") }.collect { it.split('-')[1] as int }
+                seq == (0..<500).toList()
+            }
+        cleanup:
+            executor.shutdown()
+            async.close()
+        where:
+            overflow << AsyncCommandOutput.Overflow.values()
+    }
+
+    def "drop info when full"() {
+        given:
+            def output = new TestOutput(gate: new CountDownLatch(1))
+            def async = AsyncCommandOutput.builder().delegate(output).capacity(4).overflow(
+                AsyncCommandOutput.Overflow.DROP_INFO
+            ).build()
+        when:
+            (0..<20).each { async.info(it) }
+            output.gate.countDown()
+            async.output('done')
+            async.flush()
+        then:
+            async.dropped > 0
+            output.messages.size() == 21 - async.dropped
+            output.messages.last() == 'output:done'
+        cleanup:
+            async.close()
+    }
+
+    def "spill when full"() {
+        given:
+            def output = new TestOutput(gate: new CountDownLatch(1))
+            def async = AsyncCommandOutput.builder().delegate(output).capacity(4).overflow(
+                AsyncCommandOutput.Overflow.SPILL
+            ).build()
+        when:
+            (0..<20).each { async.output(it) }
+            output.gate.countDown()
+            async.flush()
+        then:
+            output.messages == (0..<20).collect { "output:$it".toString() }
+        cleanup:
+            async.close()
+    }
+
+    def "unreadable spill file counts spilled messages as dropped"() {
+        given:
+            def dir = Files.createTempDirectory('spill')
+            def output = new TestOutput(gate: new CountDownLatch(1))
+            def async = AsyncCommandOutput.builder().delegate(output).capacity(4).overflow(
+                AsyncCommandOutput.Overflow.SPILL
+            ).spillDirectory(dir.toFile()).build()
+        when:
+            (0..<20).each { async.output(it) }
+            dir.toFile().listFiles()*.delete()
+            output.gate.countDown()
+            async.flush()
+        then:
+            RuntimeException e = thrown()
+            e.cause.message == 'Failed to read spilled output'
+            async.dropped > 0
+            output.messages.size() == 20 - async.dropped
+        cleanup:
+            async.close()
+            dir.toFile().deleteDir()
+    }
+
+    def "flush reports delegate failure"() {
+        given:
+            def output = Mock(CommandOutput) {
+                output(_) >> { throw new IllegalStateException('broken') }
+            }
+            def async = AsyncCommandOutput.builder().delegate(output).build()
+        when:
+            async.output('a')
+            async.flush()
+        then:
+            RuntimeException e = thrown()
+            e.cause.message == 'broken'
+        cleanup:
+            async.close()
+    }
+
+    def "closed output rejects messages"() {
+        given:
+            def async = AsyncCommandOutput.builder().delegate(new TestOutput()).build()
+            async.close()
+        when:
+            async.output('a')
+        then:
+            thrown(IllegalStateException)
+    }
+}
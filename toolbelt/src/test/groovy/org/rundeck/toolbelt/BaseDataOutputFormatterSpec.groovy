@@ -0,0 +1,169 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+
+import java.util.function.Function
+
+class BaseDataOutputFormatterSpec extends Specification {
+    static class TestFormatter extends BaseDataOutputFormatter {
+        TestFormatter(final OutputFormatter base, final Function<Object, Optional<Formatable>> dataFormatter) {
+            super(base, dataFormatter)
+        }
+
+        @Override
+        protected OutputFormatter withBase(
+            final Function<Object, Optional<Formatable>> dataFormatter,
+            final OutputFormatter base
+        ) {
+            new TestFormatter(base, dataFormatter)
+        }
+
+        @Override
+        protected boolean canFormatObject(final Object value) {
+            true
+        }
+
+        @Override
+        protected String formatObject(final Object value) {
+            "object:$value"
+        }
+
+        @Override
+        protected String formatMap(final Map value) {
+            "map:$value"
+        }
+
+        @Override
+        protected String formatList(final List value) {
+            "list:$value"
+        }
+    }
+
+    static Formatable listData(List list) {
+        new Formatable() {
+            @Override
+            List<?> asList() {
+                list
+            }
+        }
+    }
+
+    static class Job {
+        String name
+    }
+
+    static class ScheduledJob extends Job {
+    }
+
+    def "adapter is used for type and subtypes"() {
+        given:
+            def formatter = new TestFormatter(null, null)
+            formatter.adapter(Job, { Job job ->
+                new Formatable() {
+                    @Override
+                    Map<?, ?> asMap() {
+                        [name: job.name]
+                    }
+                }
+            })
+        expect:
+            formatter.format(new Job(name: 'a')) == 'map:[name:a]'
+            formatter.format(new ScheduledJob(name: 'b')) == 'map:[name:b]'
+            formatter.format('c') == 'object:c'
+    }
+
+    def "adapter is used before data formatter"() {
+        given:
+            def calls = 0
+            def formatter = new TestFormatter(null, { calls++; Optional.empty() })
+            formatter.adapter(Job, { Job job -> listData([job.name]) })
+        when:
+            def result = formatter.format(new Job(name: 'a'))
+        then:
+            result == 'list:[a]'
+            calls == 0
+        when:
+            result = formatter.format('b')
+        then:
+            result == 'object:b'
+            calls == 1
+    }
+
+    def "adapter registered after use applies"() {
+        given:
+            def formatter = new TestFormatter(null, null)
+        expect:
+            formatter.format(new Job(name: 'a')).startsWith('object:')
+        when:
+            formatter.adapter(Job, { Job job -> listData([job.name]) })
+        then:
+            formatter.format(new Job(name: 'a')) == 'list:[a]'
+    }
+
+    def "adapters are shared with base copies"() {
+        given:
+            def formatter = new TestFormatter(null, null)
+            def copy = formatter.withBase(new ToStringFormatter())
+        when:
+            formatter.adapter(Job, { Job job -> listData([job.name]) })
+        then:
+            copy.format(new Job(name: 'a')) == 'list:[a]'
+    }
+
+    def "plain maps and lists are formatted as objects"() {
+        given:
+            def formatter = new TestFormatter(null, null)
+        expect:
+            formatter.format([a: 'b']) == 'object:[a:b]'
+            formatter.format(['a']) == 'object:[a]'
+            formatter.format(['a'] as Set) == 'object:[a]'
+            formatter.format(listData(['a'])) == 'list:[a]'
+    }
+
+    static class TypeFormatter extends TestFormatter {
+        Map<Class, Integer> typeChecks = [:]
+        int objectChecks
+
+        TypeFormatter(final Function<Object, Optional<Formatable>> dataFormatter) {
+            super(null, dataFormatter)
+        }
+
+        @Override
+        protected boolean canFormatObject(final Object value) {
+            objectChecks++
+            true
+        }
+
+        @Override
+        protected boolean canFormatType(final Class<?> type) {
+            typeChecks[type] = (typeChecks[type] ?: 0) + 1
+            type != Job
+        }
+    }
+
+    def "plain types are checked once per class without a data formatter"() {
+        given:
+            def formatter = new TypeFormatter(null)
+        when:
+            def results = ['a', 'b', [c: 'd'], new Job(name: 'e')].collect { formatter.format(it) }
+            formatter.format(new Job(name: 'f'))
+        then:
+            results.take(3) == ['object:a', 'object:b', 'object:[c:d]']
+            results[3].startsWith('object:')
+            formatter.typeChecks == [(String): 1, (LinkedHashMap): 1, (Job): 1]
+            formatter.objectChecks == 2
+    }
+
+    def "plain types are not used with a data formatter"() {
+        given:
+            def calls = 0
+            def formatter = new TypeFormatter({ calls++; Optional.empty() })
+        when:
+            def result = formatter.format('a')
+        then:
+            result == 'object:a'
+            calls == 1
+            formatter.typeChecks.isEmpty()
+            formatter.objectChecks == 1
+    }
+}
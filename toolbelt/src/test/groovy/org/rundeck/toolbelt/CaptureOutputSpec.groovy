@@ -0,0 +1,74 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+
+import static org.rundeck.toolbelt.CommandOutput.Channel.*
+
+class CaptureOutputSpec extends Specification {
+    def "captures each channel"() {
+        given:
+            def output = CaptureOutput.builder().build()
+        when:
+            output.info('a')
+            output.output('b')
+            output.output('c')
+            output.warning('d')
+            output.error('e')
+            output.debug('f')
+        then:
+            output.getLines(INFO) == ['a']
+            output.getLines(OUTPUT) == ['b', 'c']
+            output.getText(WARNING) == 'd\n'
+            output.getText(ERROR) == 'e\n'
+            output.getLines(DEBUG) == ['f']
+            output.getLines(TRACE) == []
+    }
+
+    def "selected channels only"() {
+        given:
+            def output = CaptureOutput.builder().channels(OUTPUT).build()
+        when:
+            output.info('a')
+            output.output('b')
+        then:
+            !output.isEnabled(INFO)
+            output.getLines(INFO) == []
+            output.getLines(OUTPUT) == ['b']
+    }
+
+    def "retains most recent output when limited"() {
+        given:
+            def output = CaptureOutput.builder().chunkSize(4).maxChars(10).build()
+        when:
+            (0..<10).each { output.output("ab$it") }
+        then:
+            output.getLines(OUTPUT) == ['ab7', 'ab8', 'ab9']
+            output.getDiscarded(OUTPUT) == 28
+    }
+
+    def "clear"() {
+        given:
+            def output = CaptureOutput.builder().build()
+            output.output('a')
+        when:
+            output.clear()
+        then:
+            output.getText(OUTPUT) == ''
+    }
+
+    def "tee to capture"() {
+        given:
+            def first = CaptureOutput.builder().channels(OUTPUT).build()
+            def second = CaptureOutput.builder().build()
+            def tee = new TeeOutput(first, second)
+        when:
+            tee.output('a')
+            tee.info('b')
+        then:
+            tee.isEnabled(INFO)
+            first.getLines(OUTPUT) == ['a']
+            first.getLines(INFO) == []
+            second.getLines(OUTPUT) == ['a']
+            second.getLines(INFO) == ['b']
+    }
+}
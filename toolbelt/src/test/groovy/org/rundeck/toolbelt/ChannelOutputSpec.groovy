@@ -0,0 +1,183 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.rundeck.toolbelt.CommandOutput.Channel.*
+
+@Unroll
+class ChannelOutputSpec extends Specification {
+    class TestOutput implements CommandOutput {
+        List<String> messages = []
+
+        @Override
+        void info(final Object output) {
+            messages << "info:$output".toString()
+        }
+
+        @Override
+        void output(final Object output) {
+            messages << "output:$output".toString()
+        }
+
+        @Override
+        void error(final Object error) {
+            messages << "error:$error".toString()
+        }
+
+        @Override
+        void warning(final Object error) {
+            messages << "warning:$error".toString()
+        }
+
+        @Override
+        void debug(final Object output) {
+            messages << "debug:$output".toString()
+        }
+
+        @Override
+        void trace(final Object output) {
+            messages << "trace:$output".toString()
+        }
+
+        @Override
+        boolean isEnabled(final CommandOutput.Channel channel) {
+            true
+        }
+    }
+
+    def "routes channels to outputs or fallback"() {
+        given:
+            def fallback = new TestOutput()
+            def errors = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).error(errors).infoEnabled(false).build()
+        when:
+            channels.info('a')
+            channels.output('b')
+            channels.warning('c')
+            channels.error('d')
+        then:
+            fallback.messages == ['output:b', 'warning:c']
+            errors.messages == ['error:d']
+            !channels.isEnabled(INFO)
+            channels.isEnabled(ERROR)
+    }
+
+    def "channel without destination is disabled"() {
+        given:
+            def info = new TestOutput()
+            def channels = ChannelOutput.builder().info(info).build()
+        when:
+            channels.info('a')
+            channels.output('b')
+        then:
+            info.messages == ['info:a']
+            !channels.isEnabled(OUTPUT)
+    }
+
+    def "reconfigure at runtime"() {
+        given:
+            def fallback = new TestOutput()
+            def other = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).build()
+        when:
+            channels.info('a')
+            channels.setEnabled(INFO, false)
+            channels.info('b')
+            channels.reconfigure { it.infoEnabled(true).output(other) }
+            channels.info('c')
+            channels.output('d')
+        then:
+            fallback.messages == ['info:a', 'info:c']
+            other.messages == ['output:d']
+    }
+
+    def "thread overrides only apply to the thread"() {
+        given:
+            def fallback = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).build()
+        when:
+            def thread = Thread.start {
+                channels.reconfigureThread { it.infoEnabled(false) }
+                channels.info('hidden')
+                channels.output('shown')
+            }
+            thread.join()
+            channels.info('a')
+        then:
+            fallback.messages == ['output:shown', 'info:a']
+    }
+
+    def "thread overrides apply over later changes"() {
+        given:
+            def fallback = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).build()
+        when:
+            channels.reconfigureThread { it.infoEnabled(false) }
+            channels.setEnabled(OUTPUT, false)
+            channels.info('a')
+            channels.output('b')
+            channels.warning('c')
+            channels.resetThread()
+            channels.info('d')
+        then:
+            fallback.messages == ['warning:c', 'info:d']
+    }
+
+    def "toBuilder copies configuration"() {
+        given:
+            def fallback = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).warningEnabled(false).build()
+        when:
+            def copy = channels.toBuilder().build()
+            copy.warning('a')
+            copy.error('b')
+        then:
+            fallback.messages == ['error:b']
+    }
+
+    def "debug and trace are disabled by default"() {
+        given:
+            def fallback = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).build()
+        when:
+            channels.debug('a')
+            channels.trace('b')
+            channels.setEnabled(DEBUG, true)
+            channels.debug('c')
+            channels.trace('d')
+        then:
+            fallback.messages == ['debug:c']
+            channels.isEnabled(DEBUG)
+            !channels.isEnabled(TRACE)
+    }
+
+    def "supplier is not called for disabled channel"() {
+        given:
+            def fallback = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).infoEnabled(false).build()
+            def called = []
+        when:
+            channels.info({ called << 'info'; 'a' } as java.util.function.Supplier)
+            channels.output({ called << 'output'; 'b' } as java.util.function.Supplier)
+        then:
+            called == ['output']
+            fallback.messages == ['output:b']
+    }
+
+    def "formatted output skips formatting for disabled channel"() {
+        given:
+            def fallback = new TestOutput()
+            def channels = ChannelOutput.builder().fallback(fallback).infoEnabled(false).build()
+            def formatter = Mock(OutputFormatter)
+            def output = new FormattedOutput(channels, formatter)
+        when:
+            output.info('a')
+            output.debug('b')
+            output.output('c')
+        then:
+            1 * formatter.format('c') >> 'C'
+            0 * formatter._
+            fallback.messages == ['output:C']
+    }
+}
@@ -0,0 +1,174 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+class CommandCacheSpec extends Specification {
+    @TempDir
+    Path dir
+
+    static class ListTool {
+        int calls
+
+        @Command(cacheTtl = 60)
+        public List<String> list(CommandOutput output, @Arg("project") String project) {
+            calls++
+            output.info("listing $project".toString())
+            [project, 'b']
+        }
+
+        @Command
+        public List<String> uncached() {
+            calls++
+            ['a']
+        }
+    }
+
+    static class QuoteProvider implements OutputFormatterProvider {
+        @Override
+        String getName() {
+            'quote'
+        }
+
+        @Override
+        OutputFormatter create() {
+            new QuoteFormatter()
+        }
+    }
+
+    static class QuoteFormatter implements OutputFormatter {
+        OutputFormatter base
+
+        @Override
+        String format(final Object o) {
+            "'${base.format(o)}'"
+        }
+
+        @Override
+        OutputFormatter withBase(final OutputFormatter base) {
+            new QuoteFormatter(base: base)
+        }
+    }
+
+    static Clock clock(long millis) {
+        Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC)
+    }
+
+    static CaptureOutput run(ListTool tool, CommandCache cache, List<String> args) {
+        def output = CaptureOutput.builder().build()
+        ToolBelt.belt('test').
+            commandInput(new SimpleCommandInput()).
+            commandOutput(output).
+            commandCache(cache).
+            formatOption().
+            add(tool).
+            buckle().
+            runMain(args as String[], false)
+        output
+    }
+
+    def "cached output is replayed without invoking the command"() {
+        given:
+            def tool = new ListTool()
+            def cache = CommandCache.builder().directory(dir).build()
+        when:
+            def first = run(tool, cache, ['listtool', 'list', '--project', 'x'])
+            def second = run(tool, cache, ['listtool', 'list', '--project', 'x'])
+        then:
+            tool.calls == 1
+            second.getText(CommandOutput.Channel.OUTPUT) == first.getText(CommandOutput.Channel.OUTPUT)
+            second.getLines(CommandOutput.Channel.INFO) == ['listing x']
+        when:
+            run(tool, cache, ['listtool', 'list', '--project', 'y'])
+            run(tool, cache, ['listtool', 'uncached'])
+            run(tool, cache, ['listtool', 'uncached'])
+        then:
+            tool.calls == 4
+    }
+
+    def "output formats are cached separately"() {
+        given:
+            def tool = new ListTool()
+            def cache = CommandCache.builder().directory(dir).build()
+        when:
+            def upper = run(tool, cache, ['--format', 'upper', 'listtool', 'list', '--project', 'x'])
+            def quote = run(tool, cache, ['--format', 'quote', 'listtool', 'list', '--project', 'x'])
+            def nice = run(tool, cache, ['listtool', 'list', '--project', 'x'])
+            def replayed = run(tool, cache, ['--format', 'upper', 'listtool', 'list', '--project', 'x'])
+        then:
+            tool.calls == 3
+            upper.getLines(CommandOutput.Channel.OUTPUT).findAll() == ['* X', '* B']
+            quote.getLines(CommandOutput.Channel.OUTPUT).findAll() == ["'* x", '* b', "'"]
+            nice.getLines(CommandOutput.Channel.OUTPUT).findAll() == ['* x', '* b']
+            replayed.getText(CommandOutput.Channel.OUTPUT) == upper.getText(CommandOutput.Channel.OUTPUT)
+    }
+
+    def "environment values are part of the key"() {
+        given:
+            def tool = new ListTool()
+            def env = [URL: 'a']
+            def cache = CommandCache.builder().directory(dir).environment('URL').getenv(env.&get).build()
+        when:
+            run(tool, cache, ['listtool', 'list'])
+            run(tool, cache, ['listtool', 'list'])
+            env.URL = 'b'
+            run(tool, cache, ['listtool', 'list'])
+        then:
+            tool.calls == 2
+    }
+
+    def "expired output is not replayed"() {
+        given:
+            def tool = new ListTool()
+        when:
+            run(tool, CommandCache.builder().directory(dir).clock(clock(0)).build(), ['listtool', 'list'])
+            run(tool, CommandCache.builder().directory(dir).clock(clock(59_000)).build(), ['listtool', 'list'])
+        then:
+            tool.calls == 1
+        when:
+            run(tool, CommandCache.builder().directory(dir).clock(clock(60_000)).build(), ['listtool', 'list'])
+        then:
+            tool.calls == 2
+    }
+
+    def "least recently used entries are evicted"() {
+        given:
+            def cacheAt = { long millis ->
+                CommandCache.builder().directory(dir).maxBytes(200).clock(clock(millis)).build()
+            }
+            def store = { CommandCache cache, String key ->
+                def recorder = cache.record(CaptureOutput.builder().build())
+                recorder.output('x' * 50)
+                cache.store(key, recorder, Duration.ofMinutes(1))
+            }
+        when:
+            store(cacheAt(1000), 'a')
+            store(cacheAt(2000), 'b')
+            cacheAt(3000).replay('a', CaptureOutput.builder().build())
+            store(cacheAt(4000), 'c')
+            def cache = cacheAt(5000)
+        then:
+            cache.replay('a', CaptureOutput.builder().build())
+            !cache.replay('b', CaptureOutput.builder().build())
+            cache.replay('c', CaptureOutput.builder().build())
+    }
+
+    def "output larger than the cache is not stored"() {
+        given:
+            def cache = CommandCache.builder().directory(dir).maxBytes(10).build()
+            def delegate = CaptureOutput.builder().build()
+            def recorder = cache.record(delegate)
+        when:
+            recorder.output('x' * 20)
+            cache.store('a', recorder, Duration.ofMinutes(1))
+        then:
+            delegate.getText(CommandOutput.Channel.OUTPUT) == 'x' * 20 + '\n'
+            !cache.replay('a', CaptureOutput.builder().build())
+    }
+}
@@ -0,0 +1,105 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+class CommandSnapshotSpec extends Specification {
+    @TempDir
+    Path dir
+
+    @SubCommand(path = ['ops'], descriptions = ['Operations'])
+    static class Jobs {
+        @Command(description = 'List jobs', synonyms = ['ls'], cacheTtl = 5)
+        public List<String> list(@Arg("count") int count, String[] args) {
+            (1..count).collect { "job$it".toString() }
+        }
+
+        @Command(isDefault = true, formatResult = false)
+        public void info(CommandOutput output) {
+            output.output('info')
+        }
+    }
+
+    static CaptureOutput run(Path file, String fingerprint, List<String> args) {
+        def output = CaptureOutput.builder().build()
+        ToolBelt.belt('test').
+            commandSnapshot(file, fingerprint).
+            commandInput(new SimpleCommandInput()).
+            commandOutput(output).
+            add(new Jobs()).
+            buckle().
+            runMain(args as String[], false)
+        output
+    }
+
+    def "snapshot is reused for the same fingerprint"() {
+        given:
+            def file = dir.resolve('commands.snapshot')
+        when:
+            def output = run(file, '1', ['ops', 'ls', '--count', '2'])
+        then:
+            Files.isRegularFile(file)
+            output.getLines(CommandOutput.Channel.OUTPUT) == ['* job1', '* job2']
+        when:
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000))
+            output = run(file, '1', ['ops', 'list', '--count', '1'])
+        then:
+            output.getLines(CommandOutput.Channel.OUTPUT) == ['* job1']
+            Files.getLastModifiedTime(file).toMillis() == 1000
+        when:
+            run(file, '2', ['ops', 'info'])
+        then:
+            Files.getLastModifiedTime(file).toMillis() != 1000
+    }
+
+    def "loaded metadata matches the annotations"() {
+        given:
+            def file = dir.resolve('commands.snapshot')
+            def scanned = CommandSnapshot.scan(Jobs)
+            new CommandSnapshot(file, 'a').with {
+                type(Jobs)
+                save()
+            }
+        when:
+            def loaded = new CommandSnapshot(file, 'a').type(Jobs)
+        then:
+            loaded.name == scanned.name
+            loaded.sub
+            loaded.path == ['ops']
+            loaded.descriptions == ['Operations']
+            loaded.methods.size() == 2
+            def list = loaded.methods.find { it.name == 'list' }
+            list.description == 'List jobs'
+            list.synonyms == ['ls'] as Set
+            list.cacheTtl == 5
+            list.parameterTypes == ['int', '[Ljava.lang.String;'] as String[]
+            list.resolve(Jobs) == Jobs.getMethod('list', int, String[])
+            def info = loaded.methods.find { it.name == 'info' }
+            info.isDefault
+            !info.formatResult
+    }
+
+    def "snapshot is only written when classes were scanned"() {
+        given:
+            def file = dir.resolve('commands.snapshot')
+            new CommandSnapshot(file, 'a').with {
+                type(Jobs)
+                save()
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1000))
+        when:
+            def snapshot = new CommandSnapshot(file, fingerprint)
+            snapshot.type(Jobs)
+            snapshot.save()
+        then:
+            (Files.getLastModifiedTime(file).toMillis() != 1000) == written
+        where:
+            fingerprint | written
+            'a'         | false
+            'b'         | true
+    }
+}
@@ -0,0 +1,143 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class CompletionIndexSpec extends Specification {
+    @Command(synonyms = ['j'])
+    class Jobs {
+        @Command
+        public void list(@Arg("project") String project, @Arg("v") boolean verbose) {
+        }
+
+        @Command
+        public void load(@Arg("file") String file) {
+        }
+
+        @Command(isHidden = true)
+        public void purge() {
+        }
+    }
+
+    @SubCommand
+    class Top {
+        @Command
+        public void info() {
+        }
+    }
+
+    class TestOutput implements CommandOutput {
+        List<Object> output = []
+        List<Object> warning = []
+
+        @Override
+        void info(final Object output) {
+        }
+
+        @Override
+        void output(final Object output) {
+            this.output << output
+        }
+
+        @Override
+        void error(final Object error) {
+        }
+
+        @Override
+        void warning(final Object error) {
+            this.warning << error
+        }
+    }
+
+    Tool tool(TestOutput output) {
+        ToolBelt.belt('test').
+            defaultHelpCommands().
+            add(new Jobs(), new Top()).
+            commandOutput(output).
+            commandInput(new SimpleCommandInput()).
+            completion().
+            buckle()
+    }
+
+    def "complete #words"() {
+        given:
+            def output = new TestOutput()
+            def tool = tool(output)
+        when:
+            def result = tool.runMain((['__complete'] + words) as String[], false)
+        then:
+            result
+            output.output == expect
+        where:
+            words                            | expect
+            []                               | ['info', 'jobs']
+            ['']                             | ['info', 'jobs']
+            ['j']                            | ['jobs']
+            ['jobs', '']                     | ['list', 'load']
+            ['j', 'l']                       | ['list', 'load']
+            ['jobs', 'li']                   | ['list']
+            ['jobs', 'p']                    | []
+            ['jobs', 'list', '-']            | ['--project', '-v']
+            ['jobs', 'list', '--project', 'a', '--'] | ['--project']
+            ['help']                         | []
+            ['-h']                           | []
+    }
+
+    def "completion commands are hidden"() {
+        given:
+            def output = new TestOutput()
+            def tool = tool(output)
+        when:
+            tool.runMain(['help'] as String[], false)
+        then:
+            !output.output*.toString().any { it.contains('__complete') }
+    }
+
+    def "serialized index round trip"() {
+        given:
+            def output = new TestOutput()
+            def tool = tool(output)
+            tool.runMain(['__completion', 'index'] as String[], false)
+        when:
+            def index = CompletionIndex.read(new StringReader(output.output[0].toString()))
+        then:
+            index.toString().trim() == output.output[0]
+            index.complete(['j', 'list', '--p']) == ['--project']
+            index.complete(['jobs', 'pu']) == []
+            index.complete(['jobs', 'purge', '']) == []
+    }
+
+    def "read invalid index"() {
+        when:
+            CompletionIndex.read(new StringReader(text))
+        then:
+            thrown(IOException)
+        where:
+            text << ['', 'other\n0\tx', 'toolbelt-completion 1\n', 'toolbelt-completion 1\n1\tx']
+    }
+
+    def "script for #shell"() {
+        given:
+            def output = new TestOutput()
+            def tool = tool(output)
+        when:
+            def result = tool.runMain(['__completion', shell] as String[], false)
+        then:
+            result
+            output.output[0].toString().contains('test __complete')
+        where:
+            shell << ['bash', 'zsh', 'fish']
+    }
+
+    def "script for unknown shell"() {
+        given:
+            def output = new TestOutput()
+            def tool = tool(output)
+        when:
+            def result = tool.runMain(['__completion', 'tcsh'] as String[], false)
+        then:
+            !result
+            output.warning == ['Unsupported shell: tcsh, expected bash, zsh or fish']
+    }
+}
@@ -0,0 +1,125 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.GZIPInputStream
+
+class FileChannelOutputSpec extends Specification {
+    @TempDir
+    Path dir
+
+    def "writes labeled lines"() {
+        given:
+            def path = dir.resolve('out.log')
+            def output = FileChannelOutput.builder().path(path).build()
+        when:
+            output.output('a')
+            output.warning('b')
+            output.debug('c')
+            output.output('ü')
+            output.close()
+        then:
+            path.getText('UTF-8') == 'OUTPUT: a\nWARNING: b\nOUTPUT: ü\n'
+    }
+
+    def "writes unlabeled lines for selected channels"() {
+        given:
+            def path = dir.resolve('out.log')
+            def output = FileChannelOutput.builder().
+                path(path).
+                labels(false).
+                channels(CommandOutput.Channel.OUTPUT).
+                bufferSize(16).
+                build()
+        when:
+            (0..<10).each { output.output("line $it") }
+            output.error('ignored')
+            output.flush()
+        then:
+            path.text == (0..<10).collect { "line $it\n" }.join('')
+            !output.isEnabled(CommandOutput.Channel.ERROR)
+        cleanup:
+            output.close()
+    }
+
+    def "rotates and compresses"() {
+        given:
+            def path = dir.resolve('out.log')
+            def output = FileChannelOutput.builder().
+                path(path).
+                labels(false).
+                maxSize(20).
+                maxFiles(2).
+                compress(true).
+                build()
+        when:
+            (0..<10).each { output.output("line $it") }
+            output.close()
+            def files = Files.list(dir).collect { it.fileName.toString() }.sort()
+        then:
+            files == ['out.log', 'out.log.3.gz', 'out.log.4.gz']
+            path.text == 'line 8\nline 9\n'
+            new GZIPInputStream(dir.resolve('out.log.4.gz').newInputStream()).text == 'line 6\nline 7\n'
+    }
+
+    def "compression failure is thrown on close"() {
+        given:
+            def path = dir.resolve('out.log')
+            Files.createDirectory(dir.resolve('out.log.1.gz.tmp'))
+            def output = FileChannelOutput.builder().path(path).labels(false).maxSize(10).compress(true).build()
+        when:
+            output.output('first')
+            output.output('second')
+            output.close()
+        then:
+            IOException e = thrown()
+            e.message == "Failed to compress or remove rotated files of $path"
+            dir.resolve('out.log.1').text == 'first\n'
+            path.text == 'second\n'
+    }
+
+    def "continues rotation numbering"() {
+        given:
+            def path = dir.resolve('out.log')
+            Files.write(dir.resolve('out.log.7'), 'old\n'.bytes)
+            path.text = 'current\n'
+            def output = FileChannelOutput.builder().path(path).labels(false).maxSize(10).build()
+        when:
+            output.output('next')
+            output.close()
+        then:
+            dir.resolve('out.log.8').text == 'current\n'
+            path.text == 'next\n'
+    }
+
+    def "tee to file from tool"() {
+        given:
+            def path = dir.resolve('out.log')
+            def file = FileChannelOutput.builder().path(path).build()
+            def tool = ToolBelt.belt('test').
+                commandOutput(Mock(CommandOutput) { isEnabled(_) >> true }).
+                commandInput(new SimpleCommandInput()).
+                defaultHelpCommands().
+                add(new TeeTool()).
+                tee(file).
+                buckle()
+        when:
+            tool.runMain(['greet'] as String[], false)
+        then:
+            path.text == 'OUTPUT: hello\nWARNING: careful\n'
+        cleanup:
+            file.close()
+    }
+
+    @SubCommand
+    static class TeeTool {
+        @Command
+        public void greet(CommandOutput output) {
+            output.output('hello')
+            output.warning('careful')
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+
+class MappedFileOutputSpec extends Specification {
+    @TempDir
+    Path dir
+
+    def "writes across windows and truncates on close"() {
+        given:
+            def path = dir.resolve('export.txt')
+            path.text = 'previous content, which is longer than a window'
+            def output = MappedFileOutput.builder().path(path).windowSize(16).build()
+            def expected = (0..<10).collect { "line ü $it\n" }.join('')
+        when:
+            (0..<10).each { output.output("line ü $it") }
+            output.info('not written')
+            output.close()
+        then:
+            path.getText('UTF-8') == expected
+            path.toFile().length() == expected.getBytes('UTF-8').length
+    }
+
+    def "export crossing many windows"() {
+        given:
+            def path = dir.resolve('export.txt')
+            def output = MappedFileOutput.builder().path(path).windowSize(4096).build()
+            def lines = (0..<5000).collect { "row $it, ${'x' * (it % 50)}".toString() }
+        when:
+            lines.each { output.output(it) }
+            def size = output.size
+            output.close()
+        then:
+            size > 4096 * 20
+            path.toFile().length() == size
+            path.toFile().readLines('UTF-8') == lines
+    }
+
+    def "selected channels"() {
+        given:
+            def path = dir.resolve('export.txt')
+            def output = MappedFileOutput.builder().
+                path(path).
+                channels(CommandOutput.Channel.OUTPUT, CommandOutput.Channel.ERROR).
+                build()
+        when:
+            output.output('a')
+            output.error('b')
+            output.warning('c')
+            output.close()
+        then:
+            path.text == 'a\nb\n'
+            output.isEnabled(CommandOutput.Channel.ERROR)
+            !output.isEnabled(CommandOutput.Channel.WARNING)
+    }
+
+    def "closed output rejects messages"() {
+        given:
+            def output = MappedFileOutput.builder().path(dir.resolve('export.txt')).build()
+            output.close()
+        when:
+            output.output('a')
+        then:
+            thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,127 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class OutputFormatsSpec extends Specification {
+    static class UpperProvider implements OutputFormatterProvider {
+        static int created
+
+        @Override
+        String getName() {
+            'upper'
+        }
+
+        @Override
+        OutputFormatter create() {
+            created++
+            new UpperFormatter()
+        }
+    }
+
+    static class UpperFormatter implements OutputFormatter {
+        OutputFormatter base
+
+        @Override
+        String format(final Object o) {
+            base.format(o).toUpperCase()
+        }
+
+        @Override
+        OutputFormatter withBase(final OutputFormatter base) {
+            new UpperFormatter(base: base)
+        }
+    }
+
+    @SubCommand
+    class Jobs {
+        @Command
+        void list(CommandOutput output) {
+            output.info('listing')
+            output.output(['a', 'b'])
+        }
+    }
+
+    def setup() {
+        UpperProvider.created = 0
+    }
+
+    Tool tool(CaptureOutput output) {
+        ToolBelt.belt('test').
+            defaultHelpCommands().
+            add(new Jobs()).
+            commandOutput(output).
+            commandInput(new SimpleCommandInput()).
+            formatOption().
+            buckle()
+    }
+
+    def "formats are listed without creating formatters"() {
+        when:
+            def formats = OutputFormats.load(getClass().classLoader)
+        then:
+            formats.names == ['nice', 'quote', 'upper'] as Set
+            formats.has('upper')
+            !formats.has('json')
+            UpperProvider.created == 0
+    }
+
+    def "format option #args"() {
+        given:
+            def output = CaptureOutput.builder().build()
+            def tool = tool(output)
+        when:
+            def result = tool.runMain(args as String[], false)
+        then:
+            result
+            output.getLines(CommandOutput.Channel.OUTPUT).findAll() == expect
+            output.getLines(CommandOutput.Channel.INFO) == ['listing']
+            UpperProvider.created == created
+        where:
+            args                                 | expect                 | created
+            ['list']                             | ['* a', '* b']         | 0
+            ['--format', 'upper', 'list']        | ['* A', '* B']         | 1
+            ['--format=upper', 'list']           | ['* A', '* B']         | 1
+            ['--format', 'nice', 'list']         | ['* a', '* b']         | 0
+    }
+
+    def "format option on a merged tool"() {
+        given:
+            def output = CaptureOutput.builder().build()
+            def tool = tool(output).merge(ToolBelt.belt('other').commandOutput(output).add(new Jobs()).buckle())
+        when:
+            def result = tool.runMain(['--format', 'upper', 'list'] as String[], false)
+        then:
+            result
+            output.getLines(CommandOutput.Channel.OUTPUT).findAll() == ['* A', '* B']
+            UpperProvider.created == 1
+    }
+
+    def "format applies to one run"() {
+        given:
+            def output = CaptureOutput.builder().build()
+            def tool = tool(output)
+        when:
+            tool.runMain(['--format', 'upper', 'list'] as String[], false)
+            output.clear()
+            tool.runMain(['list'] as String[], false)
+        then:
+            output.getLines(CommandOutput.Channel.OUTPUT).findAll() == ['* a', '* b']
+    }
+
+    def "unknown format #args"() {
+        given:
+            def output = CaptureOutput.builder().build()
+            def tool = tool(output)
+        when:
+            def result = tool.runMain(args as String[], false)
+        then:
+            !result
+            output.getLines(CommandOutput.Channel.WARNING) == [expect]
+        where:
+            args                         | expect
+            ['--format', 'xml', 'list']  | 'Unknown format: xml, expected one of: nice, quote, upper'
+            ['--format']                 | 'Expected a format for --format: nice, quote, upper'
+    }
+}
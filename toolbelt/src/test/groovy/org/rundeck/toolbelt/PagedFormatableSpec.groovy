@@ -0,0 +1,94 @@
+package org.rundeck.toolbelt
+
+import spock.lang.Specification
+
+class PagedFormatableSpec extends Specification {
+    def "pages are fetched as items are consumed"() {
+        given:
+            def fetched = []
+            def paged = PagedFormatable.of({ int page ->
+                fetched << page
+                page < 2 ? ["a$page".toString(), "b$page".toString()] : []
+            } as PagedFormatable.PageSource)
+            def iterator = paged.asIterator()
+        when:
+            def first = iterator.next()
+        then:
+            first == 'a0'
+            fetched == [0]
+        when:
+            def rest = iterator.collect()
+        then:
+            rest == ['b0', 'a1', 'b1']
+            fetched == [0, 1, 2]
+            paged.asList() == null
+    }
+
+    def "short page is the last page"() {
+        given:
+            def fetched = []
+            def paged = PagedFormatable.of({ int page ->
+                fetched << page
+                page < 1 ? ['a', 'b'] : ['c']
+            } as PagedFormatable.PageSource, 2)
+        when:
+            def items = paged.asStream().collect()
+        then:
+            items == ['a', 'b', 'c']
+            fetched == [0, 1]
+    }
+
+    def "fetch failure is rethrown"() {
+        given:
+            def paged = PagedFormatable.of({ int page -> throw new IOException('failed') } as PagedFormatable.PageSource)
+        when:
+            paged.asIterator().hasNext()
+        then:
+            RuntimeException e = thrown()
+            e.cause instanceof IOException
+    }
+
+    def "nice formatter writes each streamed item as a chunk"() {
+        given:
+            def paged = PagedFormatable.of({ int page ->
+                page < 2 ? [[id: page]] : []
+            } as PagedFormatable.PageSource)
+            def formatter = new NiceFormatter(new ToStringFormatter())
+            def chunks = []
+        when:
+            formatter.format(paged, { chunks << it })
+        then:
+            chunks == ['* id: 0', '* id: 1']
+            formatter.format(paged) == '* id: 0' + NiceFormatter.NL + '* id: 1' + NiceFormatter.NL
+    }
+
+    def "nice formatter writes each streamed entry as a chunk"() {
+        given:
+            def data = new Formatable() {
+                @Override
+                Iterator<? extends Map.Entry<?, ?>> asEntryIterator() {
+                    [a: 'x', b: 'y'].entrySet().iterator()
+                }
+            }
+            def formatter = new NiceFormatter(new ToStringFormatter())
+            def chunks = []
+        when:
+            formatter.format(data, { chunks << it })
+        then:
+            chunks == ['a: x', 'b: y']
+    }
+
+    def "formatted output delivers chunks to the delegate"() {
+        given:
+            def capture = CaptureOutput.builder().build()
+            def output = new FormattedOutput(
+                capture,
+                new PrefixFormatter('> ', new NiceFormatter(new ToStringFormatter()))
+            )
+            def paged = PagedFormatable.of({ int page -> page < 3 ? [page] : [] } as PagedFormatable.PageSource)
+        when:
+            output.output(paged)
+        then:
+            capture.getLines(CommandOutput.Channel.OUTPUT) == ['> * 0', '> * 1', '> * 2']
+    }
+}
@@ -1,8 +1,19 @@
 package org.rundeck.toolbelt
 
+import spock.lang.IgnoreIf
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionStage
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+import java.util.stream.Collectors
+import java.util.stream.Stream
+
 /**
  * Created by greg on 6/1/16.
  */
@@ -608,4 +619,598 @@ class ToolBeltSpec extends Specification {
         then:
             sut.helped
     }
+
+    def "unknown command suggests similar names"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.with('test', output, new SubCmd2())
+        when:
+            def result = tool.runMain(['mytool1', 'amethd'] as String[], false)
+        then:
+            !result
+            output.warning == ['No such command: amethd. Did you mean: amethod, bmethod? Available commands: [amethod, bmethod]']
+    }
+
+    def "prefix #cmd resolves command when enabled"() {
+        given:
+            def test = new SubCmd2()
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                add(test).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                commandPrefixes(true).
+                buckle()
+        when:
+            def result = tool.runMain((['myt', cmd]) as String[], false)
+        then:
+            test.runMethods == expect as Set
+            output.warning == warning
+        where:
+            cmd       | expect      | warning
+            'a'       | ['amethod'] | []
+            'bm'      | ['bmethod'] | []
+            'amethod' | ['amethod'] | []
+            'c'       | []          | ['No such command: c. Available commands: [amethod, bmethod]']
+    }
+
+    class MyTool7 {
+        Set<String> runMethods = []
+
+        @Command
+        public void list() {
+            runMethods << 'list'
+        }
+
+        @Command
+        public void lint() {
+            runMethods << 'lint'
+        }
+    }
+
+    def "ambiguous prefix is not resolved"() {
+        given:
+            def test = new MyTool7()
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                add(test).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                commandPrefixes(true).
+                buckle()
+        when:
+            def result = tool.runMain((['mytool7', 'li']) as String[], false)
+        then:
+            test.runMethods.isEmpty()
+            output.warning == ['Ambiguous command: li. Matching commands: [lint, list]']
+    }
+
+    def "prefix not resolved by default"() {
+        given:
+            def test = new SubCmd2()
+            def output = new TestOutput()
+            def tool = ToolBelt.with('test', output, test)
+        when:
+            def result = tool.runMain((['mytool1', 'am']) as String[], false)
+        then:
+            test.runMethods.isEmpty()
+            output.warning == ['No such command: am. Available commands: [amethod, bmethod]']
+    }
+
+    def "help is the same when requested repeatedly"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.with('test', output, new SubCmd4())
+            tool.runMain(['mytool1', 'help'] as String[], false)
+            def first = output.output.collect { it.toString() }
+            output.output.clear()
+        when:
+            tool.runMain(['mytool1', 'help'] as String[], false)
+        then:
+            output.output.collect { it.toString() } == first
+            first.contains '   asdf - desc2'
+    }
+
+    def "banner resource with replacements"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                add(new SubCmd1()).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                defaultHelpCommands().
+                bannerResource('org/rundeck/toolbelt/banner.txt', ['@version@': '1.0']).
+                buckle()
+        when:
+            tool.runMain(['help'] as String[], false)
+            tool.runMain(['help'] as String[], false)
+        then:
+            output.output.findAll { it.toString() == 'Test tool\nversion 1.0' }.size() == 2
+    }
+
+    def "missing banner resource is not shown"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                add(new SubCmd1()).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                defaultHelpCommands().
+                bannerResource('org/rundeck/toolbelt/missing.txt').
+                buckle()
+        when:
+            tool.runMain(['help'] as String[], false)
+        then:
+            output.output[0] == 'Available commands:\n'
+    }
+
+    def "async output is flushed when run completes"() {
+        given:
+            def test = new SubCmd1()
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                add(test).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                defaultHelpCommands().
+                asyncOutput(true).
+                buckle()
+        when:
+            tool.runMain(['test1', 'help'] as String[], false)
+        then:
+            output.output.contains('Available commands:\n')
+            output.output.contains('Use "test test1 [command] help" to get help on any command.')
+    }
+
+    def "async output failure is reported when run completes"() {
+        given:
+            def output = new TestOutput() {
+                @Override
+                void output(final Object o) {
+                    throw new IllegalStateException('broken')
+                }
+            }
+            def tool = ToolBelt.belt('test').
+                add(new QuietTool()).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                asyncOutput(true).
+                buckle()
+        when:
+            def result = tool.runMain(['quiettool', 'quiet'] as String[], false)
+        then:
+            !result
+            output.error == ['Failed to deliver output: broken']
+        cleanup:
+            tool.close()
+    }
+
+    def "closing the tool stops the async writer"() {
+        given:
+            def output = new TestOutput()
+            def belt = ToolBelt.belt('test').
+                add(new QuietTool()).
+                commandOutput(output).
+                commandInput(new SimpleCommandInput()).
+                asyncOutput(true)
+            belt.async().threadName('closing-spec-output')
+            def tool = belt.buckle()
+            tool.runMain(['quiettool', 'quiet'] as String[], false)
+            def writer = Thread.allStackTraces.keySet().find { it.name == 'closing-spec-output' }
+        when:
+            tool.close()
+            writer?.join(5000)
+        then:
+            writer != null
+            !writer.alive
+            output.output == ['done']
+    }
+
+    class QuietTool {
+        @Command
+        public void quiet(ChannelOutput channels, CommandOutput output) {
+            output.info('before')
+            channels.setEnabled(CommandOutput.Channel.INFO, false)
+            output.info('after')
+            output.output('done')
+        }
+    }
+
+    def "command can reconfigure channels"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.with('test', output, new QuietTool())
+        when:
+            def result = tool.runMain(['quiettool', 'quiet'] as String[], false)
+        then:
+            result
+            output.info == ['before']
+            output.output == ['done']
+    }
+
+    class AsyncTool {
+        Thread thread
+        CompletableFuture<Boolean> hanging
+        CountDownLatch interrupted = new CountDownLatch(1)
+
+        @Command
+        public CompletableFuture<Boolean> fetch(CommandOutput output, Executor executor, @Arg("result") boolean result) {
+            thread = Thread.currentThread()
+            CompletableFuture.supplyAsync({ ->
+                output.output('fetched')
+                result
+            } as Supplier<Boolean>, executor)
+        }
+
+        @Command
+        public CompletionStage<Void> fail() {
+            def future = new CompletableFuture<Void>()
+            future.completeExceptionally(new CommandWarning('remote failure'))
+            future
+        }
+
+        @Command
+        public CompletableFuture<Boolean> hang() {
+            hanging = new CompletableFuture<Boolean>()
+        }
+
+        @Command
+        public CompletionStage<Boolean> block() {
+            try {
+                Thread.sleep(10_000)
+            } catch (InterruptedException e) {
+                interrupted.countDown()
+                throw e
+            }
+            CompletableFuture.completedFuture(true)
+        }
+    }
+
+    def "async command result #result"() {
+        given:
+            def output = new TestOutput()
+            def command = new AsyncTool()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(command).
+                buckle()
+        when:
+            def success = tool.runMain((['asynctool', 'fetch'] + (result ? ['--result'] : [])) as String[], false)
+        then:
+            success == result
+            output.output == ['fetched']
+            command.thread != Thread.currentThread()
+        where:
+            result << [true, false]
+    }
+
+    def "async command failure"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(new AsyncTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['asynctool', 'fail'] as String[], false)
+        then:
+            !result
+            output.warning == ['remote failure']
+    }
+
+    def "async command timeout"() {
+        given:
+            def output = new TestOutput()
+            def command = new AsyncTool()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                commandTimeout(Duration.ofMillis(50)).
+                printStackTrace(false).
+                add(command).
+                buckle()
+        when:
+            def result = tool.runMain(['asynctool', 'hang'] as String[], false)
+        then:
+            !result
+            output.error == ['Command hang did not complete within PT0.05S']
+            command.hanging.cancelled
+    }
+
+    def "async command timeout interrupts a blocked command"() {
+        given:
+            def output = new TestOutput()
+            def command = new AsyncTool()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                commandTimeout(Duration.ofMillis(50)).
+                printStackTrace(false).
+                add(command).
+                buckle()
+        when:
+            def result = tool.runMain(['asynctool', 'block'] as String[], false)
+        then:
+            !result
+            output.error == ['Command block did not complete within PT0.05S']
+            command.interrupted.await(5, TimeUnit.SECONDS)
+    }
+
+    class StreamTool {
+        @Command
+        public Stream<String> list() {
+            ['a', 'b', 'c'].stream()
+        }
+
+        /**
+         * @return a Flow.Publisher with a small buffer, loaded by name so the spec compiles on Java 8
+         */
+        @Command
+        public Object publish(Executor executor, @Arg("fail") boolean fail) {
+            def publisher = Class.forName('java.util.concurrent.SubmissionPublisher').newInstance(executor, 4)
+            executor.execute {
+                //items submitted before subscription are dropped
+                while (!publisher.hasSubscribers()) {
+                    Thread.sleep(1)
+                }
+                (1..100).each { publisher.submit(it) }
+                if (fail) {
+                    publisher.closeExceptionally(new CommandWarning('publish failure'))
+                } else {
+                    publisher.close()
+                }
+            }
+            publisher
+        }
+    }
+
+    def "stream command writes each item"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(new StreamTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['streamtool', 'list'] as String[], false)
+        then:
+            result
+            output.output == ['* a', '* b', '* c']
+    }
+
+    def "stream command is formatted as one result"() {
+        given:
+            def output = new TestOutput()
+            def formatted = []
+            def formatter = new OutputFormatter() {
+                @Override
+                String format(final Object o) {
+                    formatted << o
+                    o instanceof Formatable ? o.asStream().collect(Collectors.toList()).toString() : o.toString()
+                }
+
+                @Override
+                OutputFormatter withBase(final OutputFormatter base) {
+                    this
+                }
+            }
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                formatter(formatter).
+                add(new StreamTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['streamtool', 'list'] as String[], false)
+        then:
+            result
+            formatted.size() == 1
+            formatted[0] instanceof Formatable
+            output.output == ['[a, b, c]']
+    }
+
+    @IgnoreIf({ jvm.java8 })
+    def "publisher command writes each item"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(new StreamTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['streamtool', 'publish'] as String[], false)
+        then:
+            result
+            output.output == (1..100).collect { "* $it".toString() }
+    }
+
+    @IgnoreIf({ jvm.java8 })
+    def "publisher command failure"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(new StreamTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['streamtool', 'publish', '--fail'] as String[], false)
+        then:
+            !result
+            output.output == (1..100).collect { "* $it".toString() }
+            output.warning == ['publish failure']
+    }
+
+    class ResultTool {
+        @Command
+        public Map<String, String> map() {
+            [name: 'a', id: '1']
+        }
+
+        @Command
+        public Object paged() {
+            PagedFormatable.of({ int page -> page < 2 ? ["p$page".toString()] : [] } as PagedFormatable.PageSource)
+        }
+
+        @Command(formatResult = false)
+        public String quiet() {
+            'quiet'
+        }
+    }
+
+    def "command result is formatted #command"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(new ResultTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['resulttool', command] as String[], false)
+        then:
+            result
+            output.output == expected
+        where:
+            command | expected
+            'map'   | ['name: a' + NiceFormatter.NL + 'id: 1' + NiceFormatter.NL]
+            'paged' | ['* p0', '* p1']
+            'quiet' | []
+    }
+
+    def "parallel introspection adds the same commands"() {
+        given:
+            def help = { boolean parallel, List<String> args ->
+                def output = new TestOutput()
+                ToolBelt.belt('test').
+                    defaultHelpCommands().
+                    commandInput(new SimpleCommandInput()).
+                    commandOutput(output).
+                    parallelIntrospection(parallel).
+                    add(new MyTool1(), new MyTool5(), new SubCmd4(), new MyTool3()).
+                    buckle().
+                    runMain(args as String[], false)
+                output.output
+            }
+        expect:
+            help(true, args) == help(false, args)
+        where:
+            args << [['-h'], ['mytool1', 'help'], ['mytool1', 'asdf', 'xyz', 'help'], ['mytool3', 'help']]
+    }
+
+    def "parallel introspection keeps path conflicts"() {
+        when:
+            ToolBelt.belt('test').
+                commandOutput(new TestOutput()).
+                parallelIntrospection(true).
+                add(new MyTool1(), new SubCmd3())
+        then:
+            RuntimeException e = thrown()
+            e.message.contains("at path: 'mytool1 greet': The subcommand at path: 'greet' cannot be extended")
+    }
+
+    class PipeTool {
+        @Command
+        public List<Map> list(@Arg("project") String project, CommandOutput output) {
+            output.info('listing')
+            [[id: 1, project: project], [id: 2, project: project]]
+        }
+
+        @Command
+        public Stream<Integer> ids(Stream<Map> jobs) {
+            jobs.map { it.id }
+        }
+
+        @Command
+        public void kill(Iterable<Object> ids, CommandOutput output) {
+            ids.each { output.output("killed $it".toString()) }
+        }
+    }
+
+    def "pipeline passes objects to the next command"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                pipelines(true).
+                add(new PipeTool()).
+                buckle()
+        when:
+            def result = tool.runMain(args as String[], false)
+        then:
+            result
+            output.output == expected
+        where:
+            args << [
+                ['pipetool', 'list', '--project', 'X', '++', 'pipetool', 'ids', '++', 'pipetool', 'kill'],
+                ['pipetool', 'list', '++', 'pipetool', 'kill'],
+                ['pipetool', 'kill'],
+            ]
+            expected << [
+                ['killed 1', 'killed 2'],
+                ['killed [id:1, project:null]', 'killed [id:2, project:null]'],
+                [],
+            ]
+    }
+
+    def "pipeline api passes objects to the next command"() {
+        given:
+            def output = new TestOutput()
+            Pipeline tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                add(new PipeTool()).
+                buckle()
+        when:
+            def result = tool.pipe(['pipetool', 'list'] as String[], ['pipetool', 'ids'] as String[])
+        then:
+            result
+            output.info == ['listing']
+            output.output == ['1', '2']
+    }
+
+    def "pipeline parameters are parsed from arguments when pipelines are disabled"() {
+        given:
+            def output = new TestOutput()
+            def input = Mock(CommandInput)
+            def tool = ToolBelt.belt('test').
+                commandInput(input).
+                commandOutput(output).
+                defaultHelpCommands().
+                add(new PipeTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['pipetool', 'kill', '--ids', 'a'] as String[], false)
+        then:
+            1 * input.parseArgs('kill', ['--ids', 'a'] as String[], Iterable, _) >> ['a', 'b']
+            result
+            output.output == ['killed a', 'killed b']
+        when:
+            tool.runMain(['pipetool', 'kill', 'help'] as String[], false)
+        then:
+            1 * input.getHelp('kill', Iterable, _) >> '--ids <ids>'
+            output.output.contains('--ids <ids>')
+    }
+
+    def "pipeline with empty command fails"() {
+        given:
+            def output = new TestOutput()
+            def tool = ToolBelt.belt('test').
+                commandInput(new SimpleCommandInput()).
+                commandOutput(output).
+                pipelines(true).
+                add(new PipeTool()).
+                buckle()
+        when:
+            def result = tool.runMain(['pipetool', 'list', '++'] as String[], false)
+        then:
+            !result
+            output.info == []
+            output.warning == ['Expected a command before and after ++']
+    }
 }